@@ -47,15 +47,14 @@ public class SpringSocialApplication {
     ) {
         return args -> {
             List<JwtToken> tokens = new LinkedList<>();
-            List<FileDb> files = new LinkedList<>();
             List<User> users = new LinkedList<>();
             Random random = new Random();
+            InputStream inputStream = resourceLoader.getResource("classpath:images/blank-profile-picture.png").getInputStream();
+            FileDb fileDb = new FileDb("blank-profile-picture.png", FileType.IMAGE_PNG, inputStream.readAllBytes());
+            fileDb.setReferenceCount(10);
+            fileDb = fileDbRepository.save(fileDb);
             for (Integer i = 1; i <= 10; i++) {
                 String suffix = i == 1 ? "" : i.toString();
-               InputStream inputStream = resourceLoader.getResource("classpath:images\\blank-profile-picture.png").getInputStream();
-                FileDb fileDb = new FileDb("blank-profile-picture.png", FileType.IMAGE_PNG, inputStream.readAllBytes());
-                fileDb.setId((long) i);
-                files.add(fileDb);
                 User user = new User();
                 user.setId((long) i);
                 user.setEmailVerified(false);
@@ -79,7 +78,6 @@ public class SpringSocialApplication {
                 }
 
             }
-            fileDbRepository.saveAll(files);
 
         };
     }
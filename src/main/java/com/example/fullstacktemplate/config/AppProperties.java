@@ -1,11 +1,16 @@
 package com.example.fullstacktemplate.config;
 
+import com.example.fullstacktemplate.model.FileStorageType;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "app")
 @Getter
@@ -13,6 +18,9 @@ import java.util.List;
 @EnableAsync
 public class AppProperties {
     private final Auth auth = new Auth();
+    private final Map<String, Cache> caches = new HashMap<>();
+    private final FileStorage fileStorage = new FileStorage();
+    private final Image image = new Image();
     private List<String> authorizedRedirectUris;
     private List<String> allowedOrigins;
     private String accountActivationUri;
@@ -22,18 +30,28 @@ public class AppProperties {
     private int maxRequestSize;
 
     public static class Auth {
-        private String tokenSecret;
         private long accessTokenExpirationMsec;
         private long refreshTokenExpirationMsec;
         private long verificationTokenExpirationMsec;
-
-        public String getTokenSecret() {
-            return tokenSecret;
-        }
-
-        public void setTokenSecret(String tokenSecret) {
-            this.tokenSecret = tokenSecret;
-        }
+        private long accessTokenCacheSize = 10000;
+        private long missingTokenCacheSize = 10000;
+        private Duration missingTokenCacheExpiration = Duration.ofMinutes(1);
+        private String subjectEncryptionAlgorithm = "AES/CBC/PKCS5Padding";
+        private int expiredTokensDeleteBatchSize = 1000;
+        private boolean opaqueRefreshTokens = true;
+        private String signatureAlgorithm = "HS512";
+        private int maxIntrospectedTokens = 100;
+        /**
+         * Secrets of the services allowed to call the token introspection endpoint, by client id, in the format of
+         * {@link org.springframework.security.crypto.factory.PasswordEncoderFactories#createDelegatingPasswordEncoder()}.
+         */
+        private Map<String, String> introspectionClients = new HashMap<>();
+        private boolean statelessAuthentication = false;
+        private long revokedTokensRefreshDelayMsec = 10000;
+        private long twoFactorChallengeExpirationMsec = 300000;
+        private final KeyRing keyRing = new KeyRing();
+        private final PasswordHashing passwordHashing = new PasswordHashing();
+        private final RateLimit rateLimit = new RateLimit();
 
         public long getAccessTokenExpirationMsec() {
             return accessTokenExpirationMsec;
@@ -58,6 +76,385 @@ public class AppProperties {
         public void setVerificationTokenExpirationMsec(long verificationTokenExpirationMsec) {
             this.verificationTokenExpirationMsec = verificationTokenExpirationMsec;
         }
+
+        public long getMissingTokenCacheSize() {
+            return missingTokenCacheSize;
+        }
+
+        public void setMissingTokenCacheSize(long missingTokenCacheSize) {
+            this.missingTokenCacheSize = missingTokenCacheSize;
+        }
+
+        public Duration getMissingTokenCacheExpiration() {
+            return missingTokenCacheExpiration;
+        }
+
+        public void setMissingTokenCacheExpiration(Duration missingTokenCacheExpiration) {
+            this.missingTokenCacheExpiration = missingTokenCacheExpiration;
+        }
+
+        public long getAccessTokenCacheSize() {
+            return accessTokenCacheSize;
+        }
+
+        public void setAccessTokenCacheSize(long accessTokenCacheSize) {
+            this.accessTokenCacheSize = accessTokenCacheSize;
+        }
+
+        public String getSubjectEncryptionAlgorithm() {
+            return subjectEncryptionAlgorithm;
+        }
+
+        public void setSubjectEncryptionAlgorithm(String subjectEncryptionAlgorithm) {
+            this.subjectEncryptionAlgorithm = subjectEncryptionAlgorithm;
+        }
+
+        public int getExpiredTokensDeleteBatchSize() {
+            return expiredTokensDeleteBatchSize;
+        }
+
+        public void setExpiredTokensDeleteBatchSize(int expiredTokensDeleteBatchSize) {
+            this.expiredTokensDeleteBatchSize = expiredTokensDeleteBatchSize;
+        }
+
+        public boolean isOpaqueRefreshTokens() {
+            return opaqueRefreshTokens;
+        }
+
+        public void setOpaqueRefreshTokens(boolean opaqueRefreshTokens) {
+            this.opaqueRefreshTokens = opaqueRefreshTokens;
+        }
+
+        public String getSignatureAlgorithm() {
+            return signatureAlgorithm;
+        }
+
+        public void setSignatureAlgorithm(String signatureAlgorithm) {
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+
+        public int getMaxIntrospectedTokens() {
+            return maxIntrospectedTokens;
+        }
+
+        public void setMaxIntrospectedTokens(int maxIntrospectedTokens) {
+            this.maxIntrospectedTokens = maxIntrospectedTokens;
+        }
+
+        public Map<String, String> getIntrospectionClients() {
+            return introspectionClients;
+        }
+
+        public void setIntrospectionClients(Map<String, String> introspectionClients) {
+            this.introspectionClients = introspectionClients;
+        }
+
+        public boolean isStatelessAuthentication() {
+            return statelessAuthentication;
+        }
+
+        public void setStatelessAuthentication(boolean statelessAuthentication) {
+            this.statelessAuthentication = statelessAuthentication;
+        }
+
+        public long getRevokedTokensRefreshDelayMsec() {
+            return revokedTokensRefreshDelayMsec;
+        }
+
+        public void setRevokedTokensRefreshDelayMsec(long revokedTokensRefreshDelayMsec) {
+            this.revokedTokensRefreshDelayMsec = revokedTokensRefreshDelayMsec;
+        }
+
+        public long getTwoFactorChallengeExpirationMsec() {
+            return twoFactorChallengeExpirationMsec;
+        }
+
+        public void setTwoFactorChallengeExpirationMsec(long twoFactorChallengeExpirationMsec) {
+            this.twoFactorChallengeExpirationMsec = twoFactorChallengeExpirationMsec;
+        }
+
+        public KeyRing getKeyRing() {
+            return keyRing;
+        }
+
+        public PasswordHashing getPasswordHashing() {
+            return passwordHashing;
+        }
+
+        public RateLimit getRateLimit() {
+            return rateLimit;
+        }
+    }
+
+    public static class Cache {
+        private long maximumSize = 1000;
+        private long maximumWeight;
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public long getMaximumWeight() {
+            return maximumWeight;
+        }
+
+        public void setMaximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+
+    public static class FileStorage {
+        private FileStorageType type = FileStorageType.DATABASE;
+        private String directory = "files";
+        private long deleteUnreferencedContentDelayMsec = 3600000;
+        private Duration unreferencedContentGracePeriod = Duration.ofHours(1);
+
+        public FileStorageType getType() {
+            return type;
+        }
+
+        public void setType(FileStorageType type) {
+            this.type = type;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getDeleteUnreferencedContentDelayMsec() {
+            return deleteUnreferencedContentDelayMsec;
+        }
+
+        public void setDeleteUnreferencedContentDelayMsec(long deleteUnreferencedContentDelayMsec) {
+            this.deleteUnreferencedContentDelayMsec = deleteUnreferencedContentDelayMsec;
+        }
+
+        public Duration getUnreferencedContentGracePeriod() {
+            return unreferencedContentGracePeriod;
+        }
+
+        public void setUnreferencedContentGracePeriod(Duration unreferencedContentGracePeriod) {
+            this.unreferencedContentGracePeriod = unreferencedContentGracePeriod;
+        }
+    }
+
+    public static class Image {
+        private List<Integer> variantSizes = new ArrayList<>(List.of(40, 128, 512));
+        private float quality = 0.85f;
+        private long maxPixels = 40_000_000;
+        private int executorThreads = 2;
+        private int executorQueueCapacity = 100;
+        private Duration uploadTimeout = Duration.ofSeconds(10);
+
+        public List<Integer> getVariantSizes() {
+            return variantSizes;
+        }
+
+        public void setVariantSizes(List<Integer> variantSizes) {
+            this.variantSizes = variantSizes;
+        }
+
+        public float getQuality() {
+            return quality;
+        }
+
+        public void setQuality(float quality) {
+            this.quality = quality;
+        }
+
+        public long getMaxPixels() {
+            return maxPixels;
+        }
+
+        public void setMaxPixels(long maxPixels) {
+            this.maxPixels = maxPixels;
+        }
+
+        public int getExecutorThreads() {
+            return executorThreads;
+        }
+
+        public void setExecutorThreads(int executorThreads) {
+            this.executorThreads = executorThreads;
+        }
+
+        public int getExecutorQueueCapacity() {
+            return executorQueueCapacity;
+        }
+
+        public void setExecutorQueueCapacity(int executorQueueCapacity) {
+            this.executorQueueCapacity = executorQueueCapacity;
+        }
+
+        public Duration getUploadTimeout() {
+            return uploadTimeout;
+        }
+
+        public void setUploadTimeout(Duration uploadTimeout) {
+            this.uploadTimeout = uploadTimeout;
+        }
+    }
+
+    public static class KeyRing {
+        private String path;
+        private Duration rotationPeriod = Duration.ofDays(30);
+        private Duration activationDelay = Duration.ofMinutes(5);
+        private long refreshDelayMsec = 60000;
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public Duration getRotationPeriod() {
+            return rotationPeriod;
+        }
+
+        public void setRotationPeriod(Duration rotationPeriod) {
+            this.rotationPeriod = rotationPeriod;
+        }
+
+        public Duration getActivationDelay() {
+            return activationDelay;
+        }
+
+        public void setActivationDelay(Duration activationDelay) {
+            this.activationDelay = activationDelay;
+        }
+
+        public long getRefreshDelayMsec() {
+            return refreshDelayMsec;
+        }
+
+        public void setRefreshDelayMsec(long refreshDelayMsec) {
+            this.refreshDelayMsec = refreshDelayMsec;
+        }
+    }
+
+    public static class PasswordHashing {
+        private int strength = 10;
+        private Duration calibrationTarget = Duration.ofMillis(250);
+        private int threads;
+        private int queueCapacity = 50;
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        public int getStrength() {
+            return strength;
+        }
+
+        public void setStrength(int strength) {
+            this.strength = strength;
+        }
+
+        public Duration getCalibrationTarget() {
+            return calibrationTarget;
+        }
+
+        public void setCalibrationTarget(Duration calibrationTarget) {
+            this.calibrationTarget = calibrationTarget;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    public static class RateLimit {
+        private long maximumKeys = 100000;
+        private final Limit perIp = new Limit(60, Duration.ofMinutes(1));
+        private final Limit perEmail = new Limit(10, Duration.ofMinutes(1));
+        private final Limit perIntrospectionClient = new Limit(600, Duration.ofMinutes(1));
+        private final Limit perTwoFactorUser = new Limit(5, Duration.ofMinutes(1));
+
+        public long getMaximumKeys() {
+            return maximumKeys;
+        }
+
+        public void setMaximumKeys(long maximumKeys) {
+            this.maximumKeys = maximumKeys;
+        }
+
+        public Limit getPerIp() {
+            return perIp;
+        }
+
+        public Limit getPerEmail() {
+            return perEmail;
+        }
+
+        public Limit getPerIntrospectionClient() {
+            return perIntrospectionClient;
+        }
+
+        public Limit getPerTwoFactorUser() {
+            return perTwoFactorUser;
+        }
+    }
+
+    public static class Limit {
+        private int requests;
+        private Duration period;
+
+        public Limit(int requests, Duration period) {
+            this.requests = requests;
+            this.period = period;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public void setRequests(int requests) {
+            this.requests = requests;
+        }
+
+        public Duration getPeriod() {
+            return period;
+        }
+
+        public void setPeriod(Duration period) {
+            this.period = period;
+        }
     }
 
 }
@@ -0,0 +1,117 @@
+package com.example.fullstacktemplate.config;
+
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.service.storage.StoredFile;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Caching;
+import java.util.List;
+import java.util.OptionalLong;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Entities are cached by Hibernate rather than by {@code @Cacheable}. Hibernate keeps their state instead of the
+     * instances, so every session gets its own copy, and changes reach the cache only once their transaction commits.
+     */
+    private static final List<String> ENTITY_CACHES = List.of(User.CACHE_REGION);
+
+    private final AppProperties appProperties;
+
+    public CacheConfig(AppProperties appProperties) {
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * Caches configured under {@code app.caches} are bounded by entry count, or by bytes when {@code maximumWeight}
+     * is set. Evictions are deferred until the surrounding transaction commits so stale entries are not re-cached.
+     */
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(1000).recordStats());
+        appProperties.getCaches().forEach((name, cache) -> {
+            if (!ENTITY_CACHES.contains(name)) {
+                cacheManager.registerCustomCache(name, buildCache(cache));
+            }
+        });
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+
+    /**
+     * Backs the Hibernate second-level cache with Caffeine. Its regions are configured under {@code app.caches} like the
+     * other caches, entity regions without configuration make startup fail.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer() {
+        javax.cache.CacheManager cacheManager = entityCacheManager();
+        ENTITY_CACHES.forEach(name -> {
+            if (cacheManager.getCache(name) == null) {
+                cacheManager.createCache(name, buildEntityCacheConfiguration(appProperties.getCaches().getOrDefault(name, new AppProperties.Cache())));
+            }
+        });
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    /**
+     * Publishes hits, misses and evictions of the entity caches like those of the other caches. Their statistics are
+     * kept by the caches themselves, so Hibernate statistics, which cost a counter update on every session operation,
+     * stay disabled outside of tests.
+     */
+    @Bean
+    public MeterBinder entityCacheMetrics() {
+        return meterRegistry -> ENTITY_CACHES.forEach(name -> JCacheMetrics.monitor(meterRegistry, entityCacheManager().getCache(name)));
+    }
+
+    private static javax.cache.CacheManager entityCacheManager() {
+        return Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+    }
+
+    private static CaffeineConfiguration<Object, Object> buildEntityCacheConfiguration(AppProperties.Cache cache) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(cache.getMaximumSize()));
+        configuration.setExpireAfterWrite(OptionalLong.of(cache.getExpireAfterWrite().toNanos()));
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> buildCache(AppProperties.Cache cache) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .expireAfterWrite(cache.getExpireAfterWrite())
+                .recordStats();
+        if (cache.getMaximumWeight() > 0) {
+            builder.maximumWeight(cache.getMaximumWeight())
+                    .weigher((key, value) -> weigh(value));
+        } else {
+            builder.maximumSize(cache.getMaximumSize());
+        }
+        return builder.build();
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof StoredFile) {
+            return Math.max(1, ((StoredFile) value).getDataLength());
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.fullstacktemplate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+
+@Configuration
+public class ExecutorConfig {
+
+    private final AppProperties appProperties;
+    private final MeterRegistry meterRegistry;
+
+    public ExecutorConfig(AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.appProperties = appProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Default executor for {@code @Async} methods. Declared explicitly, since any other executor bean switches off the
+     * one Spring Boot would create.
+     */
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder taskExecutorBuilder) {
+        return taskExecutorBuilder.build();
+    }
+
+    /**
+     * Runs image processing off the request threads. Both threads and queue are bounded; when the queue is full the
+     * task is rejected. Rejected variants are skipped and the original image keeps being served, rejected uploads are
+     * answered with 503.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor imageExecutor() {
+        AppProperties.Image image = appProperties.getImage();
+        Counter rejectedTasks = Counter.builder("executor.rejected")
+                .tag("name", "imageExecutor")
+                .register(meterRegistry);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(image.getExecutorThreads());
+        executor.setMaxPoolSize(image.getExecutorThreads());
+        executor.setQueueCapacity(image.getExecutorQueueCapacity());
+        executor.setThreadNamePrefix("image-");
+        executor.setRejectedExecutionHandler((task, threadPoolExecutor) -> {
+            rejectedTasks.increment();
+            throw new RejectedExecutionException("Image executor is saturated");
+        });
+        executor.initialize();
+        ExecutorServiceMetrics.monitor(meterRegistry, executor.getThreadPoolExecutor(), "imageExecutor");
+        return executor;
+    }
+
+    /**
+     * Runs password hashing and verification, sized to the CPUs by default. A full queue rejects the task, which is
+     * answered with 503 instead of letting password checks take over all request threads.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashingExecutor() {
+        AppProperties.PasswordHashing passwordHashing = appProperties.getAuth().getPasswordHashing();
+        int threads = passwordHashing.getThreads() > 0 ? passwordHashing.getThreads() : Runtime.getRuntime().availableProcessors();
+        Counter rejectedTasks = Counter.builder("executor.rejected")
+                .tag("name", "passwordHashingExecutor")
+                .register(meterRegistry);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(passwordHashing.getQueueCapacity());
+        executor.setThreadNamePrefix("password-");
+        executor.setRejectedExecutionHandler((task, threadPoolExecutor) -> {
+            rejectedTasks.increment();
+            throw new RejectedExecutionException("Password hashing executor is saturated");
+        });
+        executor.initialize();
+        ExecutorServiceMetrics.monitor(meterRegistry, executor.getThreadPoolExecutor(), "passwordHashingExecutor");
+        return executor;
+    }
+}
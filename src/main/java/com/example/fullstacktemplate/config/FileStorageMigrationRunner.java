@@ -0,0 +1,58 @@
+package com.example.fullstacktemplate.config;
+
+import com.example.fullstacktemplate.model.FileStorageType;
+import com.example.fullstacktemplate.service.FileDbService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves content of all files into the configured file storage when the application is started with
+ * {@code --migrate-file-storage}. Every file is moved in its own transaction, so the migration can be interrupted and
+ * started again.
+ */
+@Component
+@Slf4j
+public class FileStorageMigrationRunner implements ApplicationRunner {
+
+    public static final String MIGRATE_FILE_STORAGE_OPTION = "migrate-file-storage";
+    private static final int BATCH_SIZE = 100;
+
+    private final FileDbService fileDbService;
+    private final AppProperties appProperties;
+
+    public FileStorageMigrationRunner(FileDbService fileDbService, AppProperties appProperties) {
+        this.fileDbService = fileDbService;
+        this.appProperties = appProperties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(MIGRATE_FILE_STORAGE_OPTION)) {
+            return;
+        }
+        FileStorageType storageType = appProperties.getFileStorage().getType();
+        log.info("Moving files to {} storage", storageType);
+        long moved = 0;
+        long failed = 0;
+        Long lastId = 0L;
+        List<Long> ids = fileDbService.findIdsNotInStorage(storageType, lastId, BATCH_SIZE);
+        while (!ids.isEmpty()) {
+            for (Long id : ids) {
+                try {
+                    fileDbService.moveToStorage(id, storageType);
+                    moved++;
+                } catch (RuntimeException e) {
+                    log.error("Could not move file {} to {} storage", id, storageType, e);
+                    failed++;
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+            ids = fileDbService.findIdsNotInStorage(storageType, lastId, BATCH_SIZE);
+        }
+        log.info("{} files were moved to {} storage, {} failed", moved, storageType, failed);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.fullstacktemplate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Measures BCrypt on this host when the application is started with {@code --calibrate-password-hashing} and logs
+ * the highest strength whose verification stays within {@code app.auth.passwordHashing.calibrationTarget}. Each
+ * strength takes twice as long as the previous one, so the measurement stops at the first strength over the target.
+ * <p>
+ * A changed {@code app.auth.passwordHashing.strength} applies to new hashes right away, existing ones are rehashed at
+ * the next successful login of their user.
+ */
+@Component
+@Slf4j
+public class PasswordHashingCalibrationRunner implements ApplicationRunner {
+
+    public static final String CALIBRATE_PASSWORD_HASHING_OPTION = "calibrate-password-hashing";
+    private static final int MIN_STRENGTH = 4;
+    private static final int MAX_STRENGTH = 31;
+    private static final int SAMPLES = 5;
+    private static final String PASSWORD = "calibration-password";
+
+    private final AppProperties appProperties;
+
+    public PasswordHashingCalibrationRunner(AppProperties appProperties) {
+        this.appProperties = appProperties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(CALIBRATE_PASSWORD_HASHING_OPTION)) {
+            return;
+        }
+        AppProperties.PasswordHashing passwordHashing = appProperties.getAuth().getPasswordHashing();
+        Duration target = passwordHashing.getCalibrationTarget();
+        int threads = passwordHashing.getThreads() > 0 ? passwordHashing.getThreads() : Runtime.getRuntime().availableProcessors();
+        log.info("Calibrating BCrypt strength for {} ms per password check on {} threads", target.toMillis(), threads);
+        int recommended = MIN_STRENGTH;
+        for (int strength = MIN_STRENGTH; strength <= MAX_STRENGTH; strength++) {
+            Duration duration = measure(strength);
+            log.info("Strength {}: {} ms per password check, {} password checks per second", strength,
+                    duration.toMillis(), String.format("%.1f", threads * 1e9 / duration.toNanos()));
+            if (duration.compareTo(target) > 0) {
+                break;
+            }
+            recommended = strength;
+        }
+        log.info("Recommended app.auth.passwordHashing.strength: {}, currently configured: {}", recommended, passwordHashing.getStrength());
+    }
+
+    /**
+     * Returns the median of a few verifications, after one hash which also warms up the code.
+     */
+    private static Duration measure(int strength) {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(strength);
+        String encodedPassword = passwordEncoder.encode(PASSWORD);
+        long[] durations = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            passwordEncoder.matches(PASSWORD, encodedPassword);
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return Duration.ofNanos(durations[SAMPLES / 2]);
+    }
+}
@@ -1,37 +1,86 @@
 package com.example.fullstacktemplate.config;
 
-import com.example.fullstacktemplate.model.JwtToken;
-import com.example.fullstacktemplate.repository.TokenRepository;
+import com.example.fullstacktemplate.service.FileDbService;
+import com.example.fullstacktemplate.service.KeyRingService;
+import com.example.fullstacktemplate.service.TokenRevocationService;
 import com.example.fullstacktemplate.service.TokenService;
+import com.example.fullstacktemplate.service.TokenVersionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.time.Instant;
 
 @Component
 @Slf4j
 public class ScheduledTasks {
-    private final TokenRepository tokenRepository;
     private final TokenService tokenService;
+    private final KeyRingService keyRingService;
+    private final TokenRevocationService tokenRevocationService;
+    private final TokenVersionService tokenVersionService;
+    private final FileDbService fileDbService;
+    private final AppProperties appProperties;
+    private final Counter deletedTokensCounter;
+    private final Timer deleteExpiredTokensTimer;
 
     @Autowired
-    public ScheduledTasks(TokenRepository tokenRepository, TokenService tokenService) {
-        this.tokenRepository = tokenRepository;
+    public ScheduledTasks(TokenService tokenService, KeyRingService keyRingService, TokenRevocationService tokenRevocationService, TokenVersionService tokenVersionService, FileDbService fileDbService, AppProperties appProperties, MeterRegistry meterRegistry) {
         this.tokenService = tokenService;
+        this.keyRingService = keyRingService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.tokenVersionService = tokenVersionService;
+        this.fileDbService = fileDbService;
+        this.appProperties = appProperties;
+        this.deletedTokensCounter = Counter.builder("tokens.expired.deleted").register(meterRegistry);
+        this.deleteExpiredTokensTimer = Timer.builder("tokens.expired.delete").register(meterRegistry);
     }
 
+    @Scheduled(fixedDelayString = "${app.auth.keyRing.refreshDelayMsec:60000}", initialDelayString = "${app.auth.keyRing.refreshDelayMsec:60000}")
+    public void refreshKeyRing() throws IOException {
+        keyRingService.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.revokedTokensRefreshDelayMsec:10000}", initialDelayString = "${app.auth.revokedTokensRefreshDelayMsec:10000}")
+    public void refreshRevokedTokens() {
+        tokenRevocationService.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.revokedTokensRefreshDelayMsec:10000}", initialDelayString = "${app.auth.revokedTokensRefreshDelayMsec:10000}")
+    public void refreshTokenVersions() {
+        tokenVersionService.refresh();
+    }
+
+    /**
+     * Deletes expired tokens in batches, each in its own transaction, until a batch comes back incomplete.
+     */
     @Scheduled(fixedDelayString = "${app.deleteExpiredTokensDelayMsec}")
     public void deleteExpiredTokens() {
         log.info("Deleting expired tokens");
-        List<JwtToken> expiredTokens = tokenRepository
-                .findAll()
-                .stream()
-                .filter(jwtToken -> !tokenService.validateJwtToken(jwtToken.getValue()))
-                .collect(Collectors.toList());
-        tokenRepository.deleteAll(expiredTokens);
-        log.info("Following tokens were deleted {}", expiredTokens);
+        Instant now = Instant.now();
+        int batchSize = appProperties.getAuth().getExpiredTokensDeleteBatchSize();
+        long deletedTokens = deleteExpiredTokensTimer.record(() -> {
+            long deleted = 0;
+            int deletedInBatch;
+            do {
+                deletedInBatch = tokenService.deleteExpiredTokens(now, batchSize);
+                deleted += deletedInBatch;
+            } while (deletedInBatch == batchSize);
+            return deleted;
+        });
+        deletedTokensCounter.increment(deletedTokens);
+        log.info("{} expired tokens were deleted", deletedTokens);
+    }
+
+    @Scheduled(fixedDelayString = "${app.fileStorage.deleteUnreferencedContentDelayMsec:3600000}", initialDelayString = "${app.fileStorage.deleteUnreferencedContentDelayMsec:3600000}")
+    public void deleteUnreferencedFileContent() {
+        long deleted = fileDbService.deleteUnreferencedContent();
+        if (deleted > 0) {
+            log.info("{} unreferenced file contents were deleted", deleted);
+        }
     }
 }
@@ -1,6 +1,8 @@
 package com.example.fullstacktemplate.config;
 
 import com.example.fullstacktemplate.service.CustomUserDetailsService;
+import com.example.fullstacktemplate.config.security.BCryptStrengthPasswordEncoder;
+import com.example.fullstacktemplate.config.security.ExecutorPasswordEncoder;
 import com.example.fullstacktemplate.config.security.RestAuthenticationEntryPoint;
 import com.example.fullstacktemplate.config.security.TokenAuthenticationFilter;
 import com.example.fullstacktemplate.service.TokenService;
@@ -10,9 +12,13 @@ import com.example.fullstacktemplate.config.security.oauth2.OAuth2Authentication
 import com.example.fullstacktemplate.config.security.oauth2.OAuth2AuthenticationSuccessHandler;
 import dev.samstevens.totp.secret.DefaultSecretGenerator;
 import dev.samstevens.totp.secret.SecretGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.BeanIds;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -21,9 +27,12 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -44,26 +53,32 @@ import java.util.Arrays;
 )
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    public static final String INTROSPECTION_ROLE = "INTROSPECTION";
+
     private final CustomUserDetailsService customUserDetailsService;
     private final AppProperties appProperties;
     private final OAuth2UserService OAuth2UserService;
     private final OAuth2AuthenticationSuccessHandler oAuth2AuthenticationSuccessHandler;
     private final OAuth2AuthenticationFailureHandler oAuth2AuthenticationFailureHandler;
     private final TokenService tokenService;
+    private final ThreadPoolTaskExecutor passwordHashingExecutor;
+    private final MeterRegistry meterRegistry;
 
-    public SecurityConfig(CustomUserDetailsService customUserDetailsService, AppProperties appProperties, @Lazy  OAuth2UserService OAuth2UserService, @Lazy OAuth2AuthenticationSuccessHandler oAuth2AuthenticationSuccessHandler, OAuth2AuthenticationFailureHandler oAuth2AuthenticationFailureHandler, TokenService tokenService) {
+    public SecurityConfig(CustomUserDetailsService customUserDetailsService, AppProperties appProperties, @Lazy  OAuth2UserService OAuth2UserService, @Lazy OAuth2AuthenticationSuccessHandler oAuth2AuthenticationSuccessHandler, OAuth2AuthenticationFailureHandler oAuth2AuthenticationFailureHandler, TokenService tokenService, @Qualifier("passwordHashingExecutor") ThreadPoolTaskExecutor passwordHashingExecutor, MeterRegistry meterRegistry) {
         this.customUserDetailsService = customUserDetailsService;
         this.appProperties = appProperties;
         this.OAuth2UserService = OAuth2UserService;
         this.oAuth2AuthenticationSuccessHandler = oAuth2AuthenticationSuccessHandler;
         this.oAuth2AuthenticationFailureHandler = oAuth2AuthenticationFailureHandler;
         this.tokenService = tokenService;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.meterRegistry = meterRegistry;
     }
 
 
     @Bean
     public TokenAuthenticationFilter tokenAuthenticationFilter() {
-        return new TokenAuthenticationFilter(tokenService, customUserDetailsService);
+        return new TokenAuthenticationFilter(tokenService, customUserDetailsService, appProperties.getAuth().isStatelessAuthentication());
     }
 
     @Bean
@@ -80,7 +95,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new ExecutorPasswordEncoder(new BCryptStrengthPasswordEncoder(appProperties.getAuth().getPasswordHashing().getStrength()), passwordHashingExecutor, meterRegistry);
     }
 
     @Bean
@@ -155,6 +170,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .permitAll()
                 .antMatchers("/auth/**", "/oauth2/**")
                 .permitAll()
+                .antMatchers(HttpMethod.GET, "/files/**", "/.well-known/jwks.json")
+                .permitAll()
                 .anyRequest()
                 .authenticated()
                 .and()
@@ -175,4 +192,48 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                http .addFilterBefore(tokenAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
     }
 
+    /**
+     * Token introspection is meant for other services, not for users, so it is only open to the clients configured in
+     * {@code app.auth.introspectionClients}, authenticated with HTTP basic authentication. It is checked before the
+     * rest of {@code /auth/**}, which is open to anyone.
+     */
+    @Configuration
+    @Order(1)
+    public static class IntrospectionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+        private final AppProperties appProperties;
+
+        public IntrospectionSecurityConfig(AppProperties appProperties) {
+            this.appProperties = appProperties;
+        }
+
+        @Override
+        public void configure(AuthenticationManagerBuilder authenticationManagerBuilder) throws Exception {
+            InMemoryUserDetailsManager clients = new InMemoryUserDetailsManager();
+            appProperties.getAuth().getIntrospectionClients().forEach((clientId, secret) -> clients.createUser(User.withUsername(clientId)
+                    .password(secret)
+                    .roles(INTROSPECTION_ROLE)
+                    .build()));
+            authenticationManagerBuilder
+                    .userDetailsService(clients)
+                    .passwordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+        }
+
+        @Override
+        protected void configure(HttpSecurity http) throws Exception {
+            http
+                    .antMatcher("/auth/introspect")
+                    .sessionManagement()
+                    .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                    .csrf()
+                    .disable()
+                    .httpBasic()
+                    .and()
+                    .authorizeRequests()
+                    .anyRequest()
+                    .hasRole(INTROSPECTION_ROLE);
+        }
+    }
+
 }
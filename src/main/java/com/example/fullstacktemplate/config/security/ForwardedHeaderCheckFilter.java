@@ -0,0 +1,57 @@
+package com.example.fullstacktemplate.config.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Guards the client address used by the rate limits. Tomcat takes the address from X-Forwarded-For only when the
+ * request comes from a proxy matching {@code TRUSTED_PROXIES} and removes the header once it consumed it. A header
+ * still present means it came from an address which is not trusted, so behind an untrusted load balancer all clients
+ * share the address of the load balancer and its rate limit bucket. The first such request is logged as a warning,
+ * all of them are counted.
+ * <p>
+ * The production profile refuses to start without {@code TRUSTED_PROXIES}, since the loopback default never matches
+ * a load balancer.
+ */
+@Component
+@Slf4j
+public class ForwardedHeaderCheckFilter extends OncePerRequestFilter {
+
+    static final String TRUSTED_PROXIES = "TRUSTED_PROXIES";
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    private final AtomicBoolean warned = new AtomicBoolean();
+    private final Counter untrustedRequests;
+
+    public ForwardedHeaderCheckFilter(Environment environment, MeterRegistry meterRegistry) {
+        if (environment.acceptsProfiles(Profiles.of("production")) && !StringUtils.hasText(environment.getProperty(TRUSTED_PROXIES))) {
+            throw new IllegalStateException(TRUSTED_PROXIES + " must be set in production to the addresses of the load balancers, otherwise all clients share one rate limit");
+        }
+        this.untrustedRequests = Counter.builder("http.forwarded.untrusted").register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (request.getHeader(FORWARDED_FOR_HEADER) != null) {
+            untrustedRequests.increment();
+            if (warned.compareAndSet(false, true)) {
+                log.warn("Request from {} carries {} but the address is not trusted, the header is ignored. If it is a proxy, add it to {}",
+                        request.getRemoteAddr(), FORWARDED_FOR_HEADER, TRUSTED_PROXIES);
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.fullstacktemplate.config.security;
 
 import com.example.fullstacktemplate.exception.BadRequestException;
+import com.example.fullstacktemplate.model.ParsedToken;
 import com.example.fullstacktemplate.service.CustomUserDetailsService;
 import com.example.fullstacktemplate.service.TokenService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -22,19 +23,20 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
 
     private final TokenService tokenService;
     private final  CustomUserDetailsService customUserDetailsService;
+    private final boolean statelessAuthentication;
 
-    public TokenAuthenticationFilter(TokenService tokenService, CustomUserDetailsService customUserDetailsService) {
+    public TokenAuthenticationFilter(TokenService tokenService, CustomUserDetailsService customUserDetailsService, boolean statelessAuthentication) {
         this.tokenService = tokenService;
         this.customUserDetailsService = customUserDetailsService;
+        this.statelessAuthentication = statelessAuthentication;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        String jwt = getAccessJwtFromRequest(request).orElse(null);
-        if (jwt != null && tokenService.validateJwtToken(jwt)) {
-            Long userId = tokenService.getUserIdFromToken(jwt);
-            UserDetails userDetails = customUserDetailsService.loadUserById(userId)
-                    .orElseThrow(()->new BadRequestException("userNotFound"));
+        Optional<ParsedToken> accessToken = getAccessJwtFromRequest(request)
+                .flatMap(tokenService::parseAccessToken);
+        if (accessToken.isPresent()) {
+            UserDetails userDetails = loadUserDetails(accessToken.get());
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
             authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
@@ -44,6 +46,18 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * In stateless mode the user details come from the token itself, so the user is loaded only for tokens issued
+     * before the mode was enabled.
+     */
+    private UserDetails loadUserDetails(ParsedToken accessToken) {
+        if (statelessAuthentication && accessToken.hasUserDetails()) {
+            return UserPrincipal.create(accessToken);
+        }
+        return customUserDetailsService.loadUserById(accessToken.getUserId())
+                .orElseThrow(()->new BadRequestException("userNotFound"));
+    }
+
     private Optional<String> getAccessJwtFromRequest(HttpServletRequest request) {
         Optional<String> optionalToken = Optional.empty();
         String bearerToken = request.getHeader("Authorization");
@@ -1,7 +1,10 @@
 package com.example.fullstacktemplate.config.security;
 
+import com.example.fullstacktemplate.model.ParsedToken;
 import com.example.fullstacktemplate.model.User;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -20,6 +23,13 @@ public class UserPrincipal implements OAuth2User, UserDetails {
     private String password;
     private Collection<? extends GrantedAuthority> authorities;
     private Map<String, Object> attributes;
+    /**
+     * The user this principal was created from, so a login can go on with the user loaded during authentication
+     * instead of loading it again. Missing for principals created from access token claims.
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient User user;
 
     public UserPrincipal(Long id, String name, String email, String password, Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
@@ -33,13 +43,32 @@ public class UserPrincipal implements OAuth2User, UserDetails {
         List<GrantedAuthority> authorities = Collections.
                 singletonList(new SimpleGrantedAuthority(String.format("ROLE_%s", user.getRole())));
 
-        return new UserPrincipal(
+        UserPrincipal userPrincipal = new UserPrincipal(
                 user.getId(),
                 user.getName(),
                 user.getEmail(),
                 user.getPassword(),
                 authorities
         );
+        userPrincipal.setUser(user);
+        return userPrincipal;
+    }
+
+    /**
+     * Creates principal from user details carried by the access token. It has no password, which is fine since it is
+     * used only for requests authenticated by the token.
+     */
+    public static UserPrincipal create(ParsedToken parsedToken) {
+        List<GrantedAuthority> authorities = Collections.
+                singletonList(new SimpleGrantedAuthority(String.format("ROLE_%s", parsedToken.getRole())));
+
+        return new UserPrincipal(
+                parsedToken.getUserId(),
+                parsedToken.getName(),
+                parsedToken.getEmail(),
+                null,
+                authorities
+        );
     }
 
     public static UserPrincipal create(User user, Map<String, Object> attributes) {
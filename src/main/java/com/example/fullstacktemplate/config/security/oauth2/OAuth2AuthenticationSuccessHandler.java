@@ -4,7 +4,6 @@ import com.example.fullstacktemplate.config.AppProperties;
 import com.example.fullstacktemplate.config.security.UserPrincipal;
 import com.example.fullstacktemplate.dto.AuthResponseDto;
 import com.example.fullstacktemplate.exception.BadRequestException;
-import com.example.fullstacktemplate.model.User;
 import com.example.fullstacktemplate.repository.TokenRepository;
 import com.example.fullstacktemplate.service.*;
 import com.example.fullstacktemplate.util.CookieUtils;
@@ -31,18 +30,16 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
     private final AppProperties appProperties;
     private final CookieOAuth2AuthorizationRequestService cookieOAuth2AuthorizationRequestService;
     private final TokenRepository tokenRepository;
-    private final UserService userService;
     private final MessageService messageService;
     private final AuthenticationService authenticationService;
 
     @Autowired
     OAuth2AuthenticationSuccessHandler(TokenService tokenService, AppProperties appProperties,
                                        CookieOAuth2AuthorizationRequestService cookieOAuth2AuthorizationRequestService,
-                                       UserService userService, TokenRepository tokenRepository, MessageService messageService, AuthenticationService authenticationService) {
+                                       TokenRepository tokenRepository, MessageService messageService, AuthenticationService authenticationService) {
         this.tokenService = tokenService;
         this.appProperties = appProperties;
         this.cookieOAuth2AuthorizationRequestService = cookieOAuth2AuthorizationRequestService;
-        this.userService = userService;
         this.tokenRepository = tokenRepository;
         this.messageService = messageService;
         this.authenticationService = authenticationService;
@@ -73,42 +70,17 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
 
         String targetUrl = redirectUri.orElse(getDefaultTargetUrl());
 
-        User user = userService.findById((((UserPrincipal) authentication.getPrincipal()).getId())).orElseThrow(() -> new BadRequestException("userNotFound"));
-        if (user.getTwoFactorEnabled()) {
-            return determineTargetTwoFactorUrl(request, redirectUri, authentication);
-        }
         AuthResponseDto authResponseDto = authenticationService.login((UserPrincipal) authentication.getPrincipal());
-        return UriComponentsBuilder.fromUriString(targetUrl)
-                .queryParam("access_token", authResponseDto.getAccessToken())
-                .build().toUriString();
-
-    }
-
-    private String determineTargetTwoFactorUrl(HttpServletRequest request, Optional<String> redirectUri, Authentication authentication) {
-        String targetUrl = redirectUri.orElse(getDefaultTargetUrl());
-        try {
-            Optional<String> twoFactorCode = CookieUtils.getCookie(request, TWO_FACTOR_CODE).map(Cookie::getValue);
-            Optional<String> recoveryCode = CookieUtils.getCookie(request, RECOVERY_CODE).map(Cookie::getValue);
-            if (twoFactorCode.isEmpty() && recoveryCode.isEmpty()) {
-                return UriComponentsBuilder.fromUriString(targetUrl)
-                        .queryParam("two_factor_required", true)
-                        .build().toUriString();
-            }
-            AuthResponseDto authResponseDto;
-            if (twoFactorCode.isPresent()) {
-                authResponseDto = authenticationService.loginWithVerificationCode((UserPrincipal) authentication.getPrincipal(), twoFactorCode.get());
-            } else {
-                authResponseDto = authenticationService.loginWithRecoveryCode((UserPrincipal) authentication.getPrincipal(), recoveryCode.get());
-            }
-            return UriComponentsBuilder.fromUriString(targetUrl)
-                    .queryParam("access_token", authResponseDto.getAccessToken())
-                    .build().toUriString();
-        } catch (BadRequestException e) {
+        if (authResponseDto.getChallengeToken() != null) {
             return UriComponentsBuilder.fromUriString(targetUrl)
                     .queryParam("two_factor_required", true)
-                    .queryParam("error", messageService.getMessage(e.getLocalizedMessage()))
+                    .queryParam("challenge_token", authResponseDto.getChallengeToken())
                     .build().toUriString();
         }
+        return UriComponentsBuilder.fromUriString(targetUrl)
+                .queryParam("access_token", authResponseDto.getAccessToken())
+                .build().toUriString();
+
     }
 
 
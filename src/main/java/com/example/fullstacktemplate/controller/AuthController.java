@@ -1,9 +1,12 @@
 package com.example.fullstacktemplate.controller;
 
+import com.example.fullstacktemplate.config.SecurityConfig;
 import com.example.fullstacktemplate.dto.*;
 import com.example.fullstacktemplate.exception.BadRequestException;
 import com.example.fullstacktemplate.model.JwtToken;
+import com.example.fullstacktemplate.model.TokenType;
 import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.service.RateLimitService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -13,6 +16,8 @@ import javax.validation.Valid;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.security.Principal;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -20,34 +25,50 @@ import java.util.Optional;
 @Slf4j
 public class AuthController extends Controller {
 
+    private final RateLimitService rateLimitService;
+
+    public AuthController(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
 
     @PostMapping("/login")
-    public AuthResponseDto authenticateUser(@Valid @RequestBody LoginRequestDto loginRequestDto) {
+    public AuthResponseDto authenticateUser(@Valid @RequestBody LoginRequestDto loginRequestDto, HttpServletRequest request) {
+        rateLimitService.acquire(request.getRemoteAddr(), loginRequestDto.getEmail());
         return authenticationService.login(loginRequestDto);
     }
 
     @PostMapping("/login/verify")
-    public AuthResponseDto verifyLogin(@Valid @RequestBody LoginVerificationRequestDto loginVerificationRequestDto) {
+    public AuthResponseDto verifyLogin(@Valid @RequestBody LoginVerificationRequestDto loginVerificationRequestDto, HttpServletRequest request) {
+        rateLimitService.acquire(request.getRemoteAddr());
         return authenticationService.loginWithVerificationCode(loginVerificationRequestDto);
     }
 
     @PostMapping("/login/recovery-code")
-    public AuthResponseDto loginRecoveryCode(@Valid @RequestBody LoginVerificationRequestDto loginVerificationRequestDto) {
+    public AuthResponseDto loginRecoveryCode(@Valid @RequestBody LoginVerificationRequestDto loginVerificationRequestDto, HttpServletRequest request) {
+        rateLimitService.acquire(request.getRemoteAddr());
         return authenticationService.loginWithRecoveryCode(loginVerificationRequestDto);
     }
 
     @GetMapping("/access-token")
     public TokenResponseDto refreshAuth() {
-        Optional<JwtToken> optionalRefreshToken = authenticationService.getRefreshToken();
+        Optional<JwtToken> optionalRefreshToken = authenticationService.getRefreshTokenValue()
+                .flatMap(value -> tokenService.findValidToken(value, TokenType.REFRESH));
         if (optionalRefreshToken.isPresent()) {
-            Optional<User> optionalUser = userService.findById(tokenService.getUserIdFromToken(optionalRefreshToken.get().getValue()));
-            if (optionalUser.isPresent() && optionalRefreshToken.get().getUser().getId().equals(optionalUser.get().getId())) {
-                return new TokenResponseDto(authenticationService.createAccessToken(optionalUser.get()));
-            }
+            return new TokenResponseDto(authenticationService.createAccessToken(optionalRefreshToken.get().getUser()));
         }
         throw new BadRequestException("tokenExpired");
     }
 
+    /**
+     * Checks tokens for services which cannot verify them on their own. Results are returned in the order of the
+     * requested tokens. Only clients from {@code app.auth.introspectionClients} are let in, see {@link SecurityConfig}.
+     */
+    @PostMapping("/introspect")
+    public List<TokenIntrospectionDto> introspect(@Valid @RequestBody TokenIntrospectionRequestDto tokenIntrospectionRequestDto, Principal client) {
+        rateLimitService.acquireIntrospection(client.getName());
+        return authenticationService.introspect(tokenIntrospectionRequestDto.getTokens());
+    }
+
     @PostMapping("/signup")
     public ResponseEntity<?> registerUser(@Valid @RequestBody SignUpRequestDto signUpRequestDto) throws URISyntaxException, IOException {
         userService.createNewUser(signUpRequestDto);
@@ -67,7 +88,8 @@ public class AuthController extends Controller {
     }
 
     @PostMapping("/forgotten-password")
-    public ResponseEntity<?> forgottenPassword(@Valid @RequestBody ForgottenPasswordRequestDto forgottenPasswordRequestDto) throws MalformedURLException, URISyntaxException {
+    public ResponseEntity<?> forgottenPassword(@Valid @RequestBody ForgottenPasswordRequestDto forgottenPasswordRequestDto, HttpServletRequest request) throws MalformedURLException, URISyntaxException {
+        rateLimitService.acquire(request.getRemoteAddr(), forgottenPasswordRequestDto.getEmail());
         User user = userService.findByEmail(forgottenPasswordRequestDto.getEmail()).orElseThrow(() -> new BadRequestException("userNotFound"));
         if (user.getEmailVerified()) {
             userService.requestPasswordReset(user);
@@ -3,6 +3,9 @@ package com.example.fullstacktemplate.controller;
 import com.example.fullstacktemplate.config.AppProperties;
 import com.example.fullstacktemplate.dto.ApiResponseDto;
 import com.example.fullstacktemplate.exception.BadRequestException;
+import com.example.fullstacktemplate.exception.NotFoundException;
+import com.example.fullstacktemplate.exception.ServiceUnavailableException;
+import com.example.fullstacktemplate.exception.TooManyRequestsException;
 import com.example.fullstacktemplate.exception.UnauthorizedRequestException;
 import com.example.fullstacktemplate.repository.FileDbRepository;
 import com.example.fullstacktemplate.repository.TwoFactoryRecoveryCodeRepository;
@@ -12,7 +15,9 @@ import com.example.fullstacktemplate.service.*;
 import dev.samstevens.totp.secret.SecretGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -71,6 +76,27 @@ public abstract class Controller {
         return new ApiResponseDto(false, messageService.getMessage(ex.getLocalizedMessage()));
     }
 
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(NotFoundException.class)
+    public ApiResponseDto handleNotFoundException(NotFoundException ex) {
+        return new ApiResponseDto(false, messageService.getMessage(ex.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ApiResponseDto> handleServiceUnavailableException(ServiceUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(appProperties.getAuth().getPasswordHashing().getRetryAfter().toSeconds()))
+                .body(new ApiResponseDto(false, messageService.getMessage(ex.getMessage())));
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ApiResponseDto> handleTooManyRequestsException(TooManyRequestsException ex) {
+        long retryAfterSeconds = (ex.getRetryAfter().toMillis() + 999) / 1000;
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ApiResponseDto(false, messageService.getMessage(ex.getMessage())));
+    }
+
     @ResponseStatus(HttpStatus.UNAUTHORIZED)
     @ExceptionHandler(value = {UnauthorizedRequestException.class, AuthenticationException.class})
     public ApiResponseDto handleUnauthorized() {
@@ -0,0 +1,78 @@
+package com.example.fullstacktemplate.controller;
+
+import com.example.fullstacktemplate.exception.NotFoundException;
+import com.example.fullstacktemplate.service.storage.StoredFile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+@RestController
+public class FileController extends Controller {
+
+    private static final Duration MAX_AGE = Duration.ofDays(1);
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Files are addressed by the SHA-256 of their content, so only clients which were given the URL, or which already
+     * have the content, can fetch a file, and a URL never changes its content. The content hash is also a strong ETag
+     * and conditional requests are answered without any query.
+     * <p>
+     * With {@code size} the smallest variant covering that many pixels is served. Until such a variant exists the
+     * original is served and has to be revalidated, so clients pick up the variant once it has been created.
+     * <p>
+     * Malformed hashes are answered like unknown ones, no file can have them.
+     */
+    @GetMapping("/files/{contentHash}")
+    public void getFile(@PathVariable String contentHash, @RequestParam(required = false) Integer size, WebRequest webRequest, HttpServletResponse response) throws IOException {
+        if (!CONTENT_HASH_PATTERN.matcher(contentHash).matches()) {
+            throw new NotFoundException("fileNotExist");
+        }
+        CacheControl cacheControl = CacheControl.maxAge(MAX_AGE).cachePublic();
+        Long id = null;
+        if (size != null) {
+            id = storageService.findIdByContentHash(contentHash).orElseThrow(() -> new NotFoundException("fileNotExist"));
+            Optional<Long> variantId = storageService.findVariantId(id, size);
+            if (variantId.isPresent()) {
+                id = variantId.get();
+                contentHash = storageService.findContentHash(id).orElseThrow(() -> new NotFoundException("fileNotExist"));
+            } else {
+                cacheControl = CacheControl.noCache().cachePublic();
+            }
+        }
+        String etag = toEtag(contentHash);
+        if (webRequest.checkNotModified(etag)) {
+            setCacheHeaders(response, etag, cacheControl);
+            return;
+        }
+        if (id == null) {
+            id = storageService.findIdByContentHash(contentHash).orElseThrow(() -> new NotFoundException("fileNotExist"));
+        }
+        StoredFile storedFile = storageService.findById(id).orElseThrow(() -> new NotFoundException("fileNotExist"));
+        response.setContentType(storedFile.getType().getMimeType());
+        response.setContentLengthLong(storedFile.getSize());
+        setCacheHeaders(response, etag, cacheControl);
+        storageService.transferContent(storedFile, response.getOutputStream());
+    }
+
+    /**
+     * Sent with 304 responses as well, since caches update the stored response from the headers of a 304.
+     */
+    private void setCacheHeaders(HttpServletResponse response, String etag, CacheControl cacheControl) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+    }
+
+    private String toEtag(String contentHash) {
+        return String.format("\"%s\"", contentHash);
+    }
+}
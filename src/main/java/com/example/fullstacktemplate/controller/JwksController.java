@@ -0,0 +1,69 @@
+package com.example.fullstacktemplate.controller;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.TokenKey;
+import com.example.fullstacktemplate.service.KeyRingService;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+public class JwksController extends Controller {
+
+    private final KeyRingService keyRingService;
+
+    public JwksController(KeyRingService keyRingService) {
+        this.keyRingService = keyRingService;
+    }
+
+    /**
+     * Publishes public keys of the key ring, so other services can verify RS256 signed tokens without calling this
+     * service. Keys are published as soon as they are created, but only used after {@code activationDelay}, so caching
+     * the response for less than that never makes a client miss a key. The set of key ids is used as ETag.
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks(WebRequest webRequest) {
+        List<TokenKey> keys = keyRingService.getKeys().stream()
+                .filter(tokenKey -> tokenKey.getKeyPair() != null)
+                .collect(Collectors.toList());
+        String etag = '"' + keys.stream().map(TokenKey::getKid).collect(Collectors.joining(".")) + '"';
+        CacheControl cacheControl = CacheControl.maxAge(getMaxAge()).cachePublic();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        List<JWK> jwks = keys.stream()
+                .map(tokenKey -> new RSAKey.Builder((RSAPublicKey) tokenKey.getKeyPair().getPublic())
+                        .keyID(tokenKey.getKid())
+                        .keyUse(KeyUse.SIGNATURE)
+                        .algorithm(JWSAlgorithm.RS256)
+                        .build())
+                .collect(Collectors.toList());
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(new JWKSet(jwks).toJSONObject(true));
+    }
+
+    /**
+     * Other instances may load a new key up to one refresh later, so that much is taken off the activation delay.
+     */
+    private Duration getMaxAge() {
+        AppProperties.KeyRing keyRing = appProperties.getAuth().getKeyRing();
+        Duration maxAge = keyRing.getActivationDelay().minusMillis(keyRing.getRefreshDelayMsec());
+        return maxAge.isNegative() ? Duration.ZERO : maxAge;
+    }
+}
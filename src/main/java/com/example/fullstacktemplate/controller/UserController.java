@@ -51,6 +51,7 @@ public class UserController extends Controller {
         User user = userService.findById(userPrincipal.getId()).orElseThrow(() -> new BadRequestException("userNotFound"));
         user = userService.updatePassword(user, changePasswordDto);
         String accessToken = authenticationService.createAccessToken(user);
+        authenticationService.addRefreshToken(user);
         AuthResponseDto authResponseDto = new AuthResponseDto();
         authResponseDto.setTwoFactorRequired(false);
         authResponseDto.setAccessToken(accessToken);
@@ -61,8 +62,13 @@ public class UserController extends Controller {
     @PutMapping("/disable-two-factor")
     public ResponseEntity<?> disableTwoFactor(@CurrentUser UserPrincipal userPrincipal) {
         User user = userService.findById(userPrincipal.getId()).orElseThrow(() -> new BadRequestException("userNotFound"));
-        userService.disableTwoFactorAuthentication(user);
-        return ResponseEntity.ok().build();
+        user = userService.disableTwoFactorAuthentication(user);
+        String accessToken = authenticationService.createAccessToken(user);
+        authenticationService.addRefreshToken(user);
+        AuthResponseDto authResponseDto = new AuthResponseDto();
+        authResponseDto.setTwoFactorRequired(false);
+        authResponseDto.setAccessToken(accessToken);
+        return ResponseEntity.ok(authResponseDto);
     }
 
     @PostMapping("/two-factor-setup")
@@ -8,6 +8,7 @@ import lombok.Setter;
 public class AuthResponseDto {
     private String accessToken;
     private Boolean twoFactorRequired;
+    private String challengeToken;
     private String tokenType = "Bearer";
     private String message;
 
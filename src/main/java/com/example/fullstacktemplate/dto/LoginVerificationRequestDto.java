@@ -3,19 +3,14 @@ package com.example.fullstacktemplate.dto;
 import lombok.Getter;
 import lombok.Setter;
 
-import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 
 @Getter
 @Setter
 public class LoginVerificationRequestDto {
 
-    @Email(message = "email.invalidFormat")
-    private String email;
-
-    @NotBlank(message = "password.blank")
-    private String password;
-
+    @NotBlank(message = "jwtToken.blank")
+    private String challengeToken;
 
     private Boolean rememberMe;
 
@@ -0,0 +1,18 @@
+package com.example.fullstacktemplate.dto;
+
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+public class TokenIntrospectionDto {
+    private boolean active;
+    private Long userId;
+    private Role role;
+    private TokenType tokenType;
+    private Instant expiresAt;
+}
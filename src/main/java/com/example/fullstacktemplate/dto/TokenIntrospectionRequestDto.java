@@ -0,0 +1,25 @@
+package com.example.fullstacktemplate.dto;
+
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class TokenIntrospectionRequestDto {
+
+    /**
+     * Hard limit of tokens per request. The configurable {@code app.auth.maxIntrospectedTokens} applies below it.
+     */
+    public static final int MAX_TOKENS = 1000;
+
+    @NotEmpty(message = "jwtTokens.empty")
+    @Size(max = MAX_TOKENS, message = "tooManyTokens")
+    private List<@NotBlank(message = "jwtToken.blank") String> tokens;
+
+}
@@ -1,6 +1,7 @@
 package com.example.fullstacktemplate.dto;
 
 import com.example.fullstacktemplate.dto.validation.File;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.example.fullstacktemplate.model.AuthProvider;
 import com.example.fullstacktemplate.model.FileType;
 import lombok.Data;
@@ -18,8 +19,15 @@ public class UserDto {
     private String email;
 
     @File(maxSizeBytes = 10000000, fileTypes = {FileType.IMAGE_JPEG, FileType.IMAGE_PNG}, message = "profileImage.invalidMessage")
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private FileDbDto profileImage;
 
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long profileImageId;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String profileImageUrl;
+
     private Boolean twoFactorEnabled;
 
     private O2AuthInfoDto o2AuthInfo;
@@ -4,10 +4,20 @@ import com.example.fullstacktemplate.dto.FileDbDto;
 import com.example.fullstacktemplate.model.FileDb;
 import com.example.fullstacktemplate.model.FileType;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring",uses = FileDbMapperResolver.class)
 public interface FileDbMapper extends CustomMapper<FileDbDto, FileDb> {
 
+    @Override
+    @Mapping(target = "contentHash", ignore = true)
+    @Mapping(target = "size", ignore = true)
+    @Mapping(target = "referenceCount", ignore = true)
+    @Mapping(target = "originalId", ignore = true)
+    @Mapping(target = "variantSize", ignore = true)
+    @Mapping(target = "storageType", ignore = true)
+    FileDb toEntity(Long id, FileDbDto dto);
+
     default String fileTypeToString(FileType fileType) {
         return fileType.getMimeType();
     }
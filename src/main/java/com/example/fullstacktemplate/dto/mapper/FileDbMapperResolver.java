@@ -2,22 +2,38 @@ package com.example.fullstacktemplate.dto.mapper;
 
 import com.example.fullstacktemplate.exception.BadRequestException;
 import com.example.fullstacktemplate.model.FileDb;
-import com.example.fullstacktemplate.service.FileDbService;
+import com.example.fullstacktemplate.repository.FileDbRepository;
+import org.mapstruct.Named;
 import org.mapstruct.ObjectFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @Component
 public class FileDbMapperResolver {
 
 
-    private final FileDbService fileDbService;
+    private final FileDbRepository fileDbRepository;
 
-    public FileDbMapperResolver(FileDbService fileDbService) {
-        this.fileDbService = fileDbService;
+    public FileDbMapperResolver(FileDbRepository fileDbRepository) {
+        this.fileDbRepository = fileDbRepository;
     }
 
     @ObjectFactory
     public FileDb resolve(Long id){
-        return fileDbService.findById(id).orElseThrow(()->new BadRequestException("fileNotExist"));
+        return fileDbRepository.findById(id).orElseThrow(()->new BadRequestException("fileNotExist"));
+    }
+
+    /**
+     * Files are served under their content hash, see {@code FileController}.
+     */
+    @Named("contentHashToUrl")
+    public String createFileUrl(String contentHash) {
+        if (contentHash == null) {
+            return null;
+        }
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/files/{contentHash}")
+                .buildAndExpand(contentHash)
+                .toUriString();
     }
 }
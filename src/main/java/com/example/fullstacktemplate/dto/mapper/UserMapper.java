@@ -10,17 +10,20 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 
-@Mapper(componentModel = "spring", uses = {UserMapperResolver.class, FileDbMapper.class})
+@Mapper(componentModel = "spring", uses = {UserMapperResolver.class, FileDbMapper.class, FileDbMapperResolver.class})
 public interface UserMapper extends CustomMapper<UserDto, User> {
 
     @Override
     @Mapping(source = "dto.email", target = "requestedNewEmail")
     @Mapping(target = "email", ignore = true)
     @Mapping(target = "twoFactorEnabled", ignore = true)
+    @Mapping(target = "profileImage", ignore = true)
     User toEntity(Long id, UserDto dto);
 
     @Override
     @Mapping(target = "o2AuthInfo", source = "user" ,qualifiedByName = "providerToIsO2AuthAccount")
+    @Mapping(target = "profileImage", ignore = true)
+    @Mapping(target = "profileImageUrl", source = "profileImageContentHash", qualifiedByName = "contentHashToUrl")
     UserDto toDto(User user);
 
     @Named("providerToIsO2AuthAccount")
@@ -27,7 +27,13 @@ public class FileValidator implements ConstraintValidator<File, FileDbDto> {
 
     @Override
     public boolean isValid(FileDbDto fileDbDto, ConstraintValidatorContext constraintValidatorContext) {
+        if (fileDbDto == null) {
+            return true;
+        }
         byte[] data = fileDbDto.getData();
+        if (data == null) {
+            return false;
+        }
         return getMimeType(data)
                 .flatMap(FileType::fromMimeType)
                 .stream()
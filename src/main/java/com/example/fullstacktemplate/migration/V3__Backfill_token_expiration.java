@@ -0,0 +1,66 @@
+package com.example.fullstacktemplate.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Fills in the expiration of tokens stored before it had a column of its own, then makes the column not null. Tokens
+ * used to be stored as JWTs, so their expiration is read from the exp claim. Signatures are not checked, the values
+ * come from the table itself. Tokens without a readable expiration are treated as expired and purged by the next run
+ * of the scheduled cleanup.
+ */
+public class V3__Backfill_token_expiration extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public void migrate(Context context) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        jdbcTemplate.setMaxRows(BATCH_SIZE);
+        Timestamp now = Timestamp.from(Instant.now());
+        long lastId = 0;
+        List<Object[]> batch = findTokensWithoutExpiration(jdbcTemplate, lastId, now);
+        while (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE jwt_token SET expires_at = ? WHERE id = ?", batch);
+            lastId = (Long) batch.get(batch.size() - 1)[1];
+            batch = findTokensWithoutExpiration(jdbcTemplate, lastId, now);
+        }
+        jdbcTemplate.execute("ALTER TABLE jwt_token ALTER COLUMN expires_at SET NOT NULL");
+    }
+
+    private List<Object[]> findTokensWithoutExpiration(JdbcTemplate jdbcTemplate, long lastId, Timestamp now) {
+        return jdbcTemplate.query(
+                "SELECT id, value FROM jwt_token WHERE expires_at IS NULL AND id > ? ORDER BY id",
+                (resultSet, rowNum) -> new Object[]{readExpiration(resultSet.getString("value"), now), resultSet.getLong("id")},
+                lastId
+        );
+    }
+
+    private Timestamp readExpiration(String value, Timestamp now) {
+        if (value == null) {
+            return now;
+        }
+        String[] parts = value.split("\\.");
+        if (parts.length != 3) {
+            return now;
+        }
+        try {
+            JsonNode expiration = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1])).path("exp");
+            return expiration.canConvertToLong() ? Timestamp.from(Instant.ofEpochSecond(expiration.asLong())) : now;
+        } catch (IOException | IllegalArgumentException e) {
+            return now;
+        }
+    }
+}
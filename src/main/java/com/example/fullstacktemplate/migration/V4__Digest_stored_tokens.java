@@ -0,0 +1,48 @@
+package com.example.fullstacktemplate.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Replaces tokens stored in plain text by their digest, computed like {@code CryptoService.hash}, and drops the plain
+ * value column. Runs before the application starts serving, so no token is ever looked up before it has a digest.
+ */
+public class V4__Digest_stored_tokens extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Override
+    public void migrate(Context context) throws NoSuchAlgorithmException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        jdbcTemplate.setMaxRows(BATCH_SIZE);
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        long lastId = 0;
+        List<Object[]> batch = findTokensWithoutDigest(jdbcTemplate, messageDigest, lastId);
+        while (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE jwt_token SET digest = ? WHERE id = ?", batch);
+            lastId = (Long) batch.get(batch.size() - 1)[1];
+            batch = findTokensWithoutDigest(jdbcTemplate, messageDigest, lastId);
+        }
+        jdbcTemplate.execute("ALTER TABLE jwt_token DROP COLUMN value");
+    }
+
+    private List<Object[]> findTokensWithoutDigest(JdbcTemplate jdbcTemplate, MessageDigest messageDigest, long lastId) {
+        return jdbcTemplate.query(
+                "SELECT id, value FROM jwt_token WHERE digest IS NULL AND value IS NOT NULL AND id > ? ORDER BY id",
+                (resultSet, rowNum) -> new Object[]{digest(messageDigest, resultSet.getString("value")), resultSet.getLong("id")},
+                lastId
+        );
+    }
+
+    private static String digest(MessageDigest messageDigest, String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
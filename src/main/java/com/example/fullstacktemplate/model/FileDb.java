@@ -2,11 +2,16 @@ package com.example.fullstacktemplate.model;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.persistence.*;
 
 @Entity
-@Table(name = "file")
+@Table(name = "file", indexes = {
+        @Index(name = "file_content_hash_idx", columnList = "contentHash"),
+        @Index(name = "file_original_id_idx", columnList = "original_id"),
+        @Index(name = "file_original_content_hash_uk", columnList = "original_content_hash", unique = true)
+})
 @Getter
 @Setter
 public class FileDb {
@@ -30,7 +35,55 @@ public class FileDb {
     @Enumerated(EnumType.STRING)
     private FileType type;
 
+    /**
+     * Content of the file. Filled only for files kept in {@link FileStorageType#DATABASE}.
+     */
     @Lob
     @Column(length = 20971520)
     private byte[] data;
+
+    /**
+     * Hex encoded SHA-256 of the content, used as a strong ETag and as the address of the content in the file storage.
+     */
+    @Column(length = 64)
+    private String contentHash;
+
+    private Long size;
+
+    /**
+     * Number of users sharing this file. Files with identical content are stored only once.
+     */
+    @Column(nullable = false)
+    private Integer referenceCount = 0;
+
+    /**
+     * Set for downscaled variants of an image, which are owned by the original file and deleted together with it.
+     */
+    @Column(name = "original_id")
+    private Long originalId;
+
+    /**
+     * Content hash of originals, computed by the database. Its unique index keeps concurrent uploads of the same content
+     * from storing it twice, see {@code FileDbService#save}.
+     */
+    @Column(name = "original_content_hash", length = 64, insertable = false, updatable = false)
+    private String originalContentHash;
+
+    /**
+     * Bounding box in pixels of a variant; neither side of the variant is larger.
+     */
+    private Integer variantSize;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private FileStorageType storageType = FileStorageType.DATABASE;
+
+    @PrePersist
+    @PreUpdate
+    private void updateContentMetadata() {
+        if (data != null) {
+            contentHash = DigestUtils.sha256Hex(data);
+            size = (long) data.length;
+        }
+    }
 }
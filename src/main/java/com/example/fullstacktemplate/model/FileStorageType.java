@@ -0,0 +1,6 @@
+package com.example.fullstacktemplate.model;
+
+public enum FileStorageType {
+    DATABASE,
+    FILESYSTEM
+}
@@ -5,24 +5,60 @@ import lombok.Setter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "jwt_token_digest_type_uk", columnList = "digest, tokenType", unique = true),
+        @Index(name = "jwt_token_user_type_idx", columnList = "user_id, tokenType"),
+        @Index(name = "jwt_token_expires_at_idx", columnList = "expiresAt"),
+        @Index(name = "jwt_token_type_created_at_idx", columnList = "tokenType, createdAt")
+})
 @Getter
 @Setter
 public class JwtToken {
 
+    /**
+     * Ids are allocated from a pooled sequence in blocks, so issuing a token costs just the insert.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "jwt_token_seq")
+    @SequenceGenerator(name = "jwt_token_seq", sequenceName = "jwt_token_seq", allocationSize = 50)
     private Long id;
 
     @NotNull
     @Enumerated(EnumType.STRING)
     private TokenType tokenType;
 
+    /**
+     * The token itself, known only right after it was created. Just its digest is stored.
+     */
+    @Transient
     private String value;
 
+    /**
+     * SHA-256 of the token, encoded as unpadded base64url. Tokens are looked up by it.
+     */
+    @Column(length = 43)
+    private String digest;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Lets other instances load just the revocations stored since their last refresh. Empty for tokens stored before
+     * the column was added.
+     */
+    private Instant createdAt;
+
     @ManyToOne(targetEntity = User.class, fetch = FetchType.EAGER)
     @JoinColumn(nullable = false, name = "user_id")
     private User user;
 
+    @PrePersist
+    private void setCreatedAt() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
 }
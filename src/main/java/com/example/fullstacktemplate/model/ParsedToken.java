@@ -0,0 +1,52 @@
+package com.example.fullstacktemplate.model;
+
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Verified content of a jwt token. Instances are produced only by {@link com.example.fullstacktemplate.service.TokenService}
+ * after the signature and the expiration were checked, so callers do not need to validate the token again.
+ */
+@Getter
+public final class ParsedToken {
+
+    private final Long userId;
+    private final Date expiration;
+    private final String issuer;
+    private final TokenType tokenType;
+    private final int tokenVersion;
+    /**
+     * User details carried by access tokens issued in stateless authentication mode, {@code null} otherwise.
+     */
+    private final String email;
+    private final String name;
+    private final Role role;
+
+    public ParsedToken(Long userId, Date expiration, String issuer, TokenType tokenType, int tokenVersion) {
+        this(userId, expiration, issuer, tokenType, tokenVersion, null, null, null);
+    }
+
+    public ParsedToken(Long userId, Date expiration, String issuer, TokenType tokenType, int tokenVersion, String email, String name, Role role) {
+        this.userId = userId;
+        this.expiration = new Date(expiration.getTime());
+        this.issuer = issuer;
+        this.tokenType = tokenType;
+        this.tokenVersion = tokenVersion;
+        this.email = email;
+        this.name = name;
+        this.role = role;
+    }
+
+    public Date getExpiration() {
+        return new Date(expiration.getTime());
+    }
+
+    public boolean isOfType(TokenType tokenType) {
+        return this.tokenType == tokenType;
+    }
+
+    public boolean hasUserDetails() {
+        return role != null;
+    }
+}
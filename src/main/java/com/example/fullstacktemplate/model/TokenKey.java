@@ -0,0 +1,34 @@
+package com.example.fullstacktemplate.model;
+
+import lombok.Getter;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.KeyPair;
+import java.time.Instant;
+
+/**
+ * Key material of one key ring entry, derived once when the entry is loaded. Tokens reference it by {@code kid}.
+ */
+@Getter
+public final class TokenKey {
+
+    private final String kid;
+    private final Instant createdAt;
+    private final SecretKey signingKey;
+    private final SecretKey encryptionKey;
+    private final IvParameterSpec initializationVector;
+    /**
+     * RSA key pair for RS256 signatures, {@code null} for keys created while tokens were signed with HS512.
+     */
+    private final KeyPair keyPair;
+
+    public TokenKey(String kid, Instant createdAt, SecretKey signingKey, SecretKey encryptionKey, IvParameterSpec initializationVector, KeyPair keyPair) {
+        this.kid = kid;
+        this.createdAt = createdAt;
+        this.signingKey = signingKey;
+        this.encryptionKey = encryptionKey;
+        this.initializationVector = initializationVector;
+        this.keyPair = keyPair;
+    }
+}
@@ -1,8 +1,18 @@
 package com.example.fullstacktemplate.model;
 
 public enum TokenType {
+    ACCESS,
     FORGOTTEN_PASSWORD,
     REFRESH,
     ACCOUNT_ACTIVATION,
-    EMAIL_UPDATE
+    EMAIL_UPDATE,
+    /**
+     * Marks an access token revoked before its expiration, stored under the digest of the access token.
+     */
+    REVOKED_ACCESS,
+    /**
+     * Issued by a password login of a user with two-factor authentication, exchanged once for tokens together with a
+     * verification or recovery code.
+     */
+    TWO_FACTOR_CHALLENGE
 }
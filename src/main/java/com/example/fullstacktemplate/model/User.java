@@ -1,18 +1,29 @@
 package com.example.fullstacktemplate.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Formula;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Entity
 @Table(name = "users", uniqueConstraints = {
         @UniqueConstraint(columnNames = "email")
 })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
 @Getter
 @Setter
 public class User {
+
+    public static final String CACHE_REGION = "user";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -26,10 +37,18 @@ public class User {
     @Column
     private String requestedNewEmail;
 
-    @OneToOne(targetEntity = FileDb.class, fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @ManyToOne(targetEntity = FileDb.class, fetch = FetchType.LAZY)
     @JoinColumn(name = "profile_image")
     private FileDb profileImage;
 
+    /**
+     * Selected with the user, so that the URL of the profile image needs no query of its own.
+     */
+    @Formula("(select f.content_hash from file f where f.id = profile_image)")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String profileImageContentHash;
+
     @Column(nullable = false)
     private Boolean emailVerified = false;
 
@@ -49,9 +68,34 @@ public class User {
     @Column(nullable = false)
     private Boolean twoFactorEnabled;
 
+    @Column(nullable = false)
+    private Integer tokenVersion = 0;
+
+    private Instant tokenVersionUpdatedAt;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
     private List<TwoFactorRecoveryCode> twoFactorRecoveryCodes;
 
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
     private List<JwtToken> jwtTokens;
+
+    /**
+     * Reads the id from the lazy association, which does not load the image. Unlike a second mapping of the column it
+     * is also right for users just saved or served from the second-level cache.
+     */
+    public Long getProfileImageId() {
+        return profileImage == null ? null : profileImage.getId();
+    }
+
+    /**
+     * Prefers a loaded image, which a user just given a new image has, since the selected hash is only refreshed on the
+     * next load. Hibernate evicts entities with formulas from the second-level cache on update rather than caching
+     * their new state, so a cached user never carries the hash of a previous image.
+     */
+    public String getProfileImageContentHash() {
+        if (profileImage != null && Hibernate.isInitialized(profileImage)) {
+            return profileImage.getContentHash();
+        }
+        return profileImage == null ? null : profileImageContentHash;
+    }
 }
@@ -1,11 +1,50 @@
 package com.example.fullstacktemplate.repository;
 
 import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface FileDbRepository extends JpaRepository<FileDb, Long> {
 
+    @Query("SELECT f.contentHash from FileDb f where f.id=:id")
+    Optional<String> findContentHashById(@Param("id") Long id);
+
+    @Query("SELECT f.id from FileDb f where f.storageType<>:storageType and f.id>:lastId order by f.id")
+    List<Long> findIdsNotInStorage(@Param("storageType") FileStorageType storageType, @Param("lastId") Long lastId, Pageable pageable);
+
+    @Query("SELECT distinct f.contentHash from FileDb f where f.storageType=:storageType and f.contentHash in :contentHashes")
+    List<String> findContentHashesInStorage(@Param("storageType") FileStorageType storageType, @Param("contentHashes") Collection<String> contentHashes);
+
+    @Query("SELECT f.id from FileDb f where f.originalContentHash=:contentHash")
+    Optional<Long> findIdByOriginalContentHash(@Param("contentHash") String contentHash);
+
+    @Modifying
+    @Query("UPDATE FileDb f set f.referenceCount=f.referenceCount+1 where f.id=:id")
+    int incrementReferenceCount(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE FileDb f set f.referenceCount=f.referenceCount-1 where f.id=:id")
+    int decrementReferenceCount(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE from FileDb f where f.id=:id and f.referenceCount<=0")
+    int deleteIfUnreferenced(@Param("id") Long id);
+
+    @Query("SELECT f.id from FileDb f where f.originalId=:originalId and f.variantSize>=:size order by f.variantSize")
+    List<Long> findVariantIds(@Param("originalId") Long originalId, @Param("size") Integer size, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE from FileDb f where f.originalId=:originalId")
+    void deleteVariants(@Param("originalId") Long originalId);
 
 }
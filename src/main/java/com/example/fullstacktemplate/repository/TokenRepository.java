@@ -3,9 +3,16 @@ package com.example.fullstacktemplate.repository;
 import com.example.fullstacktemplate.model.JwtToken;
 import com.example.fullstacktemplate.model.TokenType;
 import com.example.fullstacktemplate.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -14,6 +21,32 @@ public interface TokenRepository extends JpaRepository<JwtToken, Long> {
 
     Optional<JwtToken> findByUserAndTokenType(User user, TokenType tokenType);
 
-    Optional<JwtToken> findByValueAndTokenType(String value, TokenType tokenType);
+    @Query("SELECT t from JwtToken t join fetch t.user where t.digest=:digest and t.tokenType=:tokenType")
+    Optional<JwtToken> findByDigestAndTokenType(@Param("digest") String digest, @Param("tokenType") TokenType tokenType);
 
+    @Query("SELECT t from JwtToken t join fetch t.user where t.digest in :digests and t.tokenType=:tokenType")
+    List<JwtToken> findByDigestInAndTokenType(@Param("digests") Collection<String> digests, @Param("tokenType") TokenType tokenType);
+
+    @Query("SELECT t.digest as digest, t.expiresAt as expiresAt from JwtToken t where t.tokenType=:tokenType and t.expiresAt>:now")
+    List<DigestAndExpiration> findDigestsByTokenType(@Param("tokenType") TokenType tokenType, @Param("now") Instant now);
+
+    @Query("SELECT t.digest as digest, t.expiresAt as expiresAt from JwtToken t where t.tokenType=:tokenType and t.createdAt>=:since and t.expiresAt>:now")
+    List<DigestAndExpiration> findDigestsByTokenTypeCreatedSince(@Param("tokenType") TokenType tokenType, @Param("since") Instant since, @Param("now") Instant now);
+
+    @Query("SELECT t.id from JwtToken t where t.expiresAt<:now")
+    List<Long> findExpiredIds(@Param("now") Instant now, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE from JwtToken t where t.user.id=:userId and t.tokenType=:tokenType")
+    int deleteByUserIdAndTokenType(@Param("userId") Long userId, @Param("tokenType") TokenType tokenType);
+
+    @Modifying
+    @Query("DELETE from JwtToken t where t.id in :ids")
+    int deleteByIds(@Param("ids") List<Long> ids);
+
+    interface DigestAndExpiration {
+        String getDigest();
+
+        Instant getExpiresAt();
+    }
 }
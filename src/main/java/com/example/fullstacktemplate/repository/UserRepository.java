@@ -2,8 +2,12 @@ package com.example.fullstacktemplate.repository;
 
 import com.example.fullstacktemplate.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,4 +20,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Boolean existsByEmail(String email);
 
     Boolean existsByName(String name);
+
+    @Query("SELECT u.tokenVersion from User u where u.id=:id")
+    Optional<Integer> findTokenVersionById(@Param("id") Long id);
+
+    @Query("SELECT u.id from User u where u.tokenVersionUpdatedAt >= :since")
+    List<Long> findIdsByTokenVersionUpdatedAtSince(@Param("since") Instant since);
 }
@@ -5,11 +5,12 @@ import com.example.fullstacktemplate.config.security.UserPrincipal;
 import com.example.fullstacktemplate.dto.AuthResponseDto;
 import com.example.fullstacktemplate.dto.LoginRequestDto;
 import com.example.fullstacktemplate.dto.LoginVerificationRequestDto;
+import com.example.fullstacktemplate.dto.TokenIntrospectionDto;
 import com.example.fullstacktemplate.exception.BadRequestException;
 import com.example.fullstacktemplate.model.JwtToken;
+import com.example.fullstacktemplate.model.ParsedToken;
 import com.example.fullstacktemplate.model.TokenType;
 import com.example.fullstacktemplate.model.User;
-import com.example.fullstacktemplate.repository.TokenRepository;
 import com.example.fullstacktemplate.repository.TwoFactoryRecoveryCodeRepository;
 import com.example.fullstacktemplate.repository.UserRepository;
 import dev.samstevens.totp.code.CodeGenerator;
@@ -26,16 +27,15 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.Optional;
-import java.util.TimeZone;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -48,23 +48,18 @@ public class AuthenticationService {
     private final AppProperties appProperties;
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
-    private final TokenRepository tokenRepository;
     private final MessageService messageService;
+    private final RateLimitService rateLimitService;
 
-    public AuthenticationService(UserRepository userRepository, TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository, TokenService tokenService, AppProperties appProperties, AuthenticationManager authenticationManager, UserService userService, TokenRepository tokenRepository, MessageService messageService) {
+    public AuthenticationService(UserRepository userRepository, TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository, TokenService tokenService, AppProperties appProperties, AuthenticationManager authenticationManager, UserService userService, MessageService messageService, RateLimitService rateLimitService) {
         this.userRepository = userRepository;
         this.twoFactoryRecoveryCodeRepository = twoFactoryRecoveryCodeRepository;
         this.tokenService = tokenService;
         this.appProperties = appProperties;
         this.authenticationManager = authenticationManager;
         this.userService = userService;
-        this.tokenRepository = tokenRepository;
         this.messageService = messageService;
-    }
-
-    private boolean isVerificationCodeValid(Long userId, String verificationCode) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new BadRequestException("userNotFound"));
-        return isVerificationCodeValid(user, verificationCode);
+        this.rateLimitService = rateLimitService;
     }
 
     private boolean isVerificationCodeValid(User user, String verificationCode) {
@@ -74,83 +69,163 @@ public class AuthenticationService {
         return verifier.isValidCode(user.getTwoFactorSecret(), verificationCode);
     }
 
-    private boolean isRecoveryCodeValid(Long userId, String recoveryCode) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new BadRequestException("userNotFound"));
-        return isRecoveryCodeValid(user, recoveryCode);
-    }
-
-    private boolean isRecoveryCodeValid(User user, String recoveryCode) {
-        return user.getTwoFactorRecoveryCodes()
-                .stream()
-                .anyMatch(twoFactorRecoveryCode -> recoveryCode.equals(twoFactorRecoveryCode.getRecoveryCode()));
-    }
-
-    private void deleteRecoveryCode(Long userId, String recoveryCode) {
-        twoFactoryRecoveryCodeRepository.deleteByUserIdAndRecoveryCode(userId, recoveryCode);
+    /**
+     * Deletes the recovery code and tells whether it existed, so the code is checked and used up by one statement
+     * without loading all recovery codes of the user.
+     */
+    private boolean useRecoveryCode(User user, String recoveryCode) {
+        return twoFactoryRecoveryCodeRepository.deleteByUserIdAndRecoveryCode(user.getId(), recoveryCode) > 0;
     }
 
-    public AuthResponseDto loginWithVerificationCode(UserPrincipal userPrincipal, String code) {
-        User user = userService.findById(userPrincipal.getId()).orElseThrow(() -> new BadRequestException("userNotFound"));
-        if (isVerificationCodeValid(userPrincipal.getId(), code)) {
+    /**
+     * Exchanges a challenge token issued by {@link #login(LoginRequestDto)} for tokens. The challenge is consumed even
+     * when the code is wrong, so a challenge allows a single guess and a new one costs another password check.
+     */
+    @Transactional(noRollbackFor = BadRequestException.class)
+    public AuthResponseDto loginWithVerificationCode(LoginVerificationRequestDto loginVerificationRequestDto) {
+        User user = consumeTwoFactorChallenge(loginVerificationRequestDto.getChallengeToken());
+        if (isVerificationCodeValid(user, loginVerificationRequestDto.getCode())) {
             return getAuthResponse(user);
         }
         throw new BadRequestException("invalidVerificationCode");
     }
 
-    public AuthResponseDto loginWithVerificationCode(LoginVerificationRequestDto loginVerificationRequestDto) {
-        UserPrincipal userPrincipal = getUserPrincipal(loginVerificationRequestDto.getEmail(), loginVerificationRequestDto.getPassword());
-        return loginWithVerificationCode(userPrincipal, loginVerificationRequestDto.getCode());
-    }
-
-    public AuthResponseDto loginWithRecoveryCode(UserPrincipal userPrincipal, String verificationCode) {
-        User user = userService.findByEmail(userPrincipal.getEmail()).orElseThrow(() -> new BadRequestException("userNotFound"));
-        if (isRecoveryCodeValid(user.getId(), verificationCode)) {
-            deleteRecoveryCode(user.getId(), verificationCode);
+    @Transactional(noRollbackFor = BadRequestException.class)
+    public AuthResponseDto loginWithRecoveryCode(LoginVerificationRequestDto loginVerificationRequestDto) {
+        User user = consumeTwoFactorChallenge(loginVerificationRequestDto.getChallengeToken());
+        if (useRecoveryCode(user, loginVerificationRequestDto.getCode())) {
             return getAuthResponse(user);
         }
         throw new BadRequestException("invalidRecoveryCode");
     }
 
-    public AuthResponseDto loginWithRecoveryCode(LoginVerificationRequestDto loginVerificationRequestDto) {
-        UserPrincipal userPrincipal = getUserPrincipal(loginVerificationRequestDto.getEmail(), loginVerificationRequestDto.getPassword());
-        return loginWithRecoveryCode(userPrincipal, loginVerificationRequestDto.getCode());
-    }
-
+    /**
+     * Completes an OAuth2 login. Users with two-factor authentication get a challenge token like after a password
+     * login, so the code is checked by the same rate limited, single-use challenge.
+     */
     public AuthResponseDto login(UserPrincipal userPrincipal) {
-        User user = userService.findByEmail(userPrincipal.getEmail()).orElseThrow(() -> new BadRequestException("userNotFound"));
-        if (user.getEmailVerified()) {
-            return getAuthResponse(user);
+        User user = getUser(userPrincipal);
+        if (!user.getEmailVerified()) {
+            throw new BadRequestException("accountNotActivated");
         }
-        throw new BadRequestException("accountNotActivated");
+        return user.getTwoFactorEnabled() ? createTwoFactorChallenge(user) : getAuthResponse(user);
     }
 
+    /**
+     * Users with two-factor authentication get only a short-lived challenge token, which is exchanged for tokens by
+     * {@link #loginWithVerificationCode(LoginVerificationRequestDto)}, so the password is checked only once. The user
+     * loaded to check the password is used for the rest of the login, so a login reads the user once.
+     */
     public AuthResponseDto login(LoginRequestDto loginRequestDto) {
-        UserPrincipal userPrincipal = getUserPrincipal(loginRequestDto.getEmail(), loginRequestDto.getPassword());
-        return login(userPrincipal);
+        User user = getUser(getUserPrincipal(loginRequestDto.getEmail(), loginRequestDto.getPassword()));
+        if (!user.getEmailVerified()) {
+            throw new BadRequestException("accountNotActivated");
+        }
+        return user.getTwoFactorEnabled() ? createTwoFactorChallenge(user) : getAuthResponse(user);
     }
 
-    public Optional<JwtToken> getRefreshToken() {
+    private AuthResponseDto createTwoFactorChallenge(User user) {
+        Duration expireIn = Duration.of(appProperties.getAuth().getTwoFactorChallengeExpirationMsec(), ChronoUnit.MILLIS);
+        AuthResponseDto authResponseDto = new AuthResponseDto();
+        authResponseDto.setTwoFactorRequired(true);
+        authResponseDto.setChallengeToken(tokenService.createOpaqueToken(user, expireIn, TokenType.TWO_FACTOR_CHALLENGE).getValue());
+        return authResponseDto;
+    }
+
+    public Optional<String> getRefreshTokenValue() {
         HttpServletRequest request = Optional.ofNullable((ServletRequestAttributes) RequestContextHolder.getRequestAttributes())
                 .map(ServletRequestAttributes::getRequest).orElseThrow(IllegalStateException::new);
         if (request.getCookies() != null) {
             return Arrays.stream(request.getCookies())
                     .filter(cookie -> REFRESH_TOKEN_COOKIE_NAME.equals(cookie.getName()))
                     .findFirst()
-                    .flatMap(cookie -> tokenRepository.findByValueAndTokenType(cookie.getValue(), TokenType.REFRESH));
+                    .map(Cookie::getValue);
         }
         return Optional.empty();
     }
 
+    public Optional<String> getAccessTokenValue() {
+        HttpServletRequest request = Optional.ofNullable((ServletRequestAttributes) RequestContextHolder.getRequestAttributes())
+                .map(ServletRequestAttributes::getRequest).orElseThrow(IllegalStateException::new);
+        String bearerToken = request.getHeader("Authorization");
+        if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+            return Optional.of(bearerToken.substring(7));
+        }
+        return Optional.empty();
+    }
+
+    public Optional<JwtToken> getRefreshToken() {
+        return getRefreshTokenValue().flatMap(value -> tokenService.findToken(value, TokenType.REFRESH));
+    }
+
+    /**
+     * Introspects access and refresh tokens in bulk. Access tokens are verified by their signature, refresh tokens
+     * by their stored rows. Stored rows are loaded together with their users in a single query, users of access tokens
+     * in another one.
+     */
+    public List<TokenIntrospectionDto> introspect(List<String> tokens) {
+        if (tokens.size() > appProperties.getAuth().getMaxIntrospectedTokens()) {
+            throw new BadRequestException("tooManyTokens");
+        }
+        Map<String, ParsedToken> accessTokens = new HashMap<>();
+        List<String> otherTokens = new ArrayList<>();
+        for (String token : new HashSet<>(tokens)) {
+            Optional<ParsedToken> accessToken = token.indexOf('.') < 0 ? Optional.empty() : tokenService.parseAccessToken(token);
+            if (accessToken.isPresent()) {
+                accessTokens.put(token, accessToken.get());
+            } else {
+                otherTokens.add(token);
+            }
+        }
+        Map<String, JwtToken> refreshTokens = otherTokens.isEmpty() ? Map.of() : tokenService.findValidTokens(otherTokens, TokenType.REFRESH);
+        Map<Long, User> users = new HashMap<>();
+        refreshTokens.values().forEach(jwtToken -> users.put(jwtToken.getUser().getId(), jwtToken.getUser()));
+        Set<Long> userIds = accessTokens.values().stream()
+                .map(ParsedToken::getUserId)
+                .filter(userId -> !users.containsKey(userId))
+                .collect(Collectors.toSet());
+        if (!userIds.isEmpty()) {
+            userRepository.findAllById(userIds).forEach(user -> users.put(user.getId(), user));
+        }
+        return tokens.stream()
+                .map(token -> {
+                    TokenIntrospectionDto tokenIntrospectionDto = new TokenIntrospectionDto();
+                    ParsedToken accessToken = accessTokens.get(token);
+                    JwtToken refreshToken = refreshTokens.get(token);
+                    if (accessToken != null) {
+                        tokenIntrospectionDto.setUserId(accessToken.getUserId());
+                        tokenIntrospectionDto.setTokenType(TokenType.ACCESS);
+                        tokenIntrospectionDto.setExpiresAt(accessToken.getExpiration().toInstant());
+                    } else if (refreshToken != null) {
+                        tokenIntrospectionDto.setUserId(refreshToken.getUser().getId());
+                        tokenIntrospectionDto.setTokenType(TokenType.REFRESH);
+                        tokenIntrospectionDto.setExpiresAt(refreshToken.getExpiresAt());
+                    }
+                    User user = tokenIntrospectionDto.getUserId() == null ? null : users.get(tokenIntrospectionDto.getUserId());
+                    if (user == null) {
+                        return new TokenIntrospectionDto();
+                    }
+                    tokenIntrospectionDto.setActive(true);
+                    tokenIntrospectionDto.setRole(user.getRole());
+                    return tokenIntrospectionDto;
+                })
+                .collect(Collectors.toList());
+    }
+
     public String createAccessToken(User user) {
-        return tokenService.createJwtTokenValue(user.getId(), Duration.of(appProperties.getAuth().getAccessTokenExpirationMsec(), ChronoUnit.MILLIS));
+        return tokenService.createAccessTokenValue(user, Duration.of(appProperties.getAuth().getAccessTokenExpirationMsec(), ChronoUnit.MILLIS));
     }
 
     private JwtToken createRefreshToken(User user) {
-        return tokenService.createToken(user, Duration.of(appProperties.getAuth().getRefreshTokenExpirationMsec(), ChronoUnit.MILLIS), TokenType.REFRESH);
+        Duration expireIn = Duration.of(appProperties.getAuth().getRefreshTokenExpirationMsec(), ChronoUnit.MILLIS);
+        if (appProperties.getAuth().isOpaqueRefreshTokens()) {
+            return tokenService.createOpaqueToken(user, expireIn, TokenType.REFRESH);
+        }
+        return tokenService.createToken(user, expireIn, TokenType.REFRESH);
     }
 
 
-    private void addRefreshToken(User user) {
+    public void addRefreshToken(User user) {
         JwtToken refreshToken = createRefreshToken(user);
         HttpServletResponse response = Optional.ofNullable((ServletRequestAttributes) RequestContextHolder.getRequestAttributes())
                 .map(ServletRequestAttributes::getResponse).orElseThrow(IllegalStateException::new);
@@ -175,6 +250,7 @@ public class AuthenticationService {
         Optional<JwtToken> optionalRefreshToken = getRefreshToken();
         if (optionalRefreshToken.isPresent() && optionalRefreshToken.get().getUser().getId().equals(user.getId())) {
             tokenService.delete(optionalRefreshToken.get());
+            getAccessTokenValue().ifPresent(accessToken -> tokenService.revokeAccessToken(accessToken, user));
             removeRefreshToken();
         } else {
             throw new BadRequestException("tokenExpired");
@@ -182,6 +258,26 @@ public class AuthenticationService {
 
     }
 
+    /**
+     * Consumes the challenge and takes a token from the bucket of its user. A rate limited request rolls back, so the
+     * challenge stays valid for a retry.
+     */
+    private User consumeTwoFactorChallenge(String challengeToken) {
+        JwtToken challenge = tokenService.findValidToken(challengeToken, TokenType.TWO_FACTOR_CHALLENGE)
+                .orElseThrow(() -> new BadRequestException("tokenExpired"));
+        tokenService.delete(challenge);
+        User user = challenge.getUser();
+        rateLimitService.acquireTwoFactor(user.getId());
+        return user;
+    }
+
+    private User getUser(UserPrincipal userPrincipal) {
+        if (userPrincipal.getUser() != null) {
+            return userPrincipal.getUser();
+        }
+        return userService.findById(userPrincipal.getId()).orElseThrow(() -> new BadRequestException("userNotFound"));
+    }
+
     private UserPrincipal getUserPrincipal(String email, String password) {
         Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(email, password));
         return (UserPrincipal) authentication.getPrincipal();
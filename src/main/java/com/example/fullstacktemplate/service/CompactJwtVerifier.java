@@ -0,0 +1,496 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.TokenKey;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.SignatureException;
+import lombok.Getter;
+
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Verifies HS512 signed compact JWTs of the shape issued by {@link TokenService} without the generic jjwt parser. The
+ * signature is checked with a per-thread {@link Mac} and compared in constant time, and only the claims used by
+ * {@link TokenService} are read, by a scanner of flat JSON objects instead of a JSON tree.
+ * <p>
+ * Tokens of any other shape, such as RS256 signatures, nested header or claim values, compressed payloads or JSON
+ * which jjwt reads more leniently than this scanner, are left to jjwt, which is signalled by returning {@code null}.
+ * That way the verifier only decides tokens jjwt would decide the same way, and throws the same exceptions as jjwt
+ * does for them.
+ */
+class CompactJwtVerifier {
+
+    private static final String ALGORITHM = "HS512";
+    private static final int SIGNATURE_LENGTH = 64;
+    private static final byte[] ALGORITHM_HEADER = bytes("alg");
+    private static final byte[] KEY_ID_HEADER = bytes("kid");
+    private static final byte[] COMPRESSION_HEADER = bytes("zip");
+    private static final byte[] SUBJECT_ENCRYPTION_HEADER = bytes(TokenService.SUBJECT_ENCRYPTION_HEADER);
+    private static final byte[] SUBJECT_CLAIM = bytes("sub");
+    private static final byte[] EXPIRATION_CLAIM = bytes("exp");
+    private static final byte[] ISSUER_CLAIM = bytes("iss");
+    private static final byte[] NOT_BEFORE_CLAIM = bytes("nbf");
+    private static final byte[] TOKEN_TYPE_CLAIM = bytes(TokenService.TOKEN_TYPE_CLAIM);
+    private static final byte[] TOKEN_VERSION_CLAIM = bytes(TokenService.TOKEN_VERSION_CLAIM);
+    private static final byte[] USER_CLAIM = bytes(TokenService.USER_CLAIM);
+    private static final ThreadLocal<KeyedMac> MACS = ThreadLocal.withInitial(KeyedMac::new);
+
+    private final Function<String, Optional<TokenKey>> keyResolver;
+
+    CompactJwtVerifier(Function<String, Optional<TokenKey>> keyResolver) {
+        this.keyResolver = keyResolver;
+    }
+
+    /**
+     * Like jjwt, accepts tokens without expiration, it is up to the caller to require the claims it needs.
+     *
+     * @return claims of the verified token or {@code null} when the token has to be parsed by jjwt
+     */
+    VerifiedClaims verify(String token) {
+        byte[] bytes = token.getBytes(StandardCharsets.ISO_8859_1);
+        int headerEnd = indexOf(bytes, (byte) '.', 0);
+        int payloadEnd = headerEnd < 0 ? -1 : indexOf(bytes, (byte) '.', headerEnd + 1);
+        if (payloadEnd < 0 || indexOf(bytes, (byte) '.', payloadEnd + 1) >= 0) {
+            throw new MalformedJwtException("JWT strings must contain exactly 2 period characters");
+        }
+        Header header = new Header();
+        byte[] headerJson = decode(bytes, 0, headerEnd);
+        if (headerJson == null || !scanObject(headerJson, header) || !ALGORITHM.equals(header.algorithm)) {
+            return null;
+        }
+        byte[] signature = decode(bytes, payloadEnd + 1, bytes.length);
+        if (signature == null) {
+            return null;
+        }
+        TokenKey tokenKey = keyResolver.apply(header.keyId)
+                .orElseThrow(() -> new SignatureException(String.format("Unknown key %s", header.keyId)));
+        byte[] expectedSignature = MACS.get().sign(tokenKey.getSigningKey(), bytes, payloadEnd);
+        if (signature.length != SIGNATURE_LENGTH || !MessageDigest.isEqual(expectedSignature, signature)) {
+            throw new SignatureException("JWT signature does not match locally computed signature");
+        }
+        VerifiedClaims claims = new VerifiedClaims(tokenKey, header.subjectEncryption);
+        byte[] claimsJson = decode(bytes, headerEnd + 1, payloadEnd);
+        if (claimsJson == null || !scanObject(claimsJson, claims)) {
+            return null;
+        }
+        if (claims.expiration != null && System.currentTimeMillis() > claims.expiration) {
+            throw new ExpiredJwtException(null, null, "JWT expired");
+        }
+        return claims;
+    }
+
+    /**
+     * Reads members of a JSON object whose values are strings, integers or literals and passes them to the handler.
+     * The object has to start and end the content, and strings, numbers and literals have to be valid JSON.
+     *
+     * @return false when the object has members of other kinds, keys with escapes, is not valid JSON or when the
+     * handler rejects a member
+     */
+    private static boolean scanObject(byte[] json, FieldHandler handler) {
+        if (json.length < 2 || json[0] != '{' || json[json.length - 1] != '}') {
+            return false;
+        }
+        int i = skipWhitespace(json, 1);
+        if (i == json.length - 1) {
+            return true;
+        }
+        while (true) {
+            if (i >= json.length || json[i] != '"') {
+                return false;
+            }
+            int keyStart = i + 1;
+            int keyEnd = keyStart;
+            while (keyEnd < json.length && json[keyEnd] != '"') {
+                if (json[keyEnd] == '\\' || isControlCharacter(json[keyEnd])) {
+                    return false;
+                }
+                keyEnd++;
+            }
+            i = skipWhitespace(json, keyEnd + 1);
+            if (i >= json.length || json[i] != ':') {
+                return false;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= json.length) {
+                return false;
+            }
+            byte first = json[i];
+            if (first == '"') {
+                int valueEnd = i + 1;
+                while (valueEnd < json.length && json[valueEnd] != '"' && json[valueEnd] != '\\' && !isControlCharacter(json[valueEnd])) {
+                    valueEnd++;
+                }
+                String value;
+                if (valueEnd < json.length && json[valueEnd] == '"') {
+                    value = new String(json, i + 1, valueEnd - i - 1, StandardCharsets.UTF_8);
+                    i = valueEnd + 1;
+                } else {
+                    StringBuilder builder = new StringBuilder();
+                    i = readString(json, i + 1, builder);
+                    if (i < 0) {
+                        return false;
+                    }
+                    value = builder.toString();
+                }
+                if (!handler.onString(json, keyStart, keyEnd, value)) {
+                    return false;
+                }
+            } else if (first == '-' || (first >= '0' && first <= '9')) {
+                int digitsStart = first == '-' ? i + 1 : i;
+                i = digitsStart;
+                long value = 0;
+                while (i < json.length && json[i] >= '0' && json[i] <= '9') {
+                    value = value * 10 + (json[i] - '0');
+                    i++;
+                }
+                int digits = i - digitsStart;
+                if (digits == 0 || digits > 18 || (digits > 1 && json[digitsStart] == '0')
+                        || (i < json.length && (json[i] == '.' || json[i] == 'e' || json[i] == 'E'))) {
+                    return false;
+                }
+                if (!handler.onNumber(json, keyStart, keyEnd, first == '-' ? -value : value)) {
+                    return false;
+                }
+            } else if (matches(json, i, "true") || matches(json, i, "null") || matches(json, i, "false")) {
+                if (!handler.onLiteral(json, keyStart, keyEnd)) {
+                    return false;
+                }
+                i += first == 'f' ? 5 : 4;
+            } else {
+                return false;
+            }
+            i = skipWhitespace(json, i);
+            if (i < json.length && json[i] == ',') {
+                i = skipWhitespace(json, i + 1);
+            } else {
+                return i == json.length - 1;
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of a string with escapes.
+     *
+     * @return index after the closing quote or -1 when the string is not valid JSON
+     */
+    private static int readString(byte[] json, int i, StringBuilder value) {
+        while (true) {
+            int start = i;
+            while (i < json.length && json[i] != '"' && json[i] != '\\') {
+                if (isControlCharacter(json[i])) {
+                    return -1;
+                }
+                i++;
+            }
+            value.append(new String(json, start, i - start, StandardCharsets.UTF_8));
+            if (i >= json.length) {
+                return -1;
+            }
+            if (json[i] == '"') {
+                return i + 1;
+            }
+            if (i + 1 >= json.length) {
+                return -1;
+            }
+            byte escaped = json[i + 1];
+            i += 2;
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) escaped);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    int codeUnit = i + 4 > json.length ? -1 : parseHex(json, i);
+                    if (codeUnit < 0) {
+                        return -1;
+                    }
+                    value.append((char) codeUnit);
+                    i += 4;
+                    break;
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    private static int parseHex(byte[] json, int i) {
+        int value = 0;
+        for (int j = i; j < i + 4; j++) {
+            int digit = Character.digit(json[j], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static boolean isControlCharacter(byte value) {
+        return value >= 0 && value < 0x20;
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (i < json.length && (json[i] == ' ' || json[i] == '\t' || json[i] == '\n' || json[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean matches(byte[] json, int i, String literal) {
+        if (i + literal.length() > json.length) {
+            return false;
+        }
+        for (int j = 0; j < literal.length(); j++) {
+            if (json[i + j] != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean keyEquals(byte[] json, int keyStart, int keyEnd, byte[] key) {
+        return Arrays.equals(json, keyStart, keyEnd, key, 0, key.length);
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return decoded bytes or {@code null} when the part is not strict base64url, which jjwt decodes leniently
+     */
+    private static byte[] decode(byte[] bytes, int from, int to) {
+        try {
+            ByteBuffer decoded = Base64.getUrlDecoder().decode(ByteBuffer.wrap(bytes, from, to - from));
+            byte[] result = new byte[decoded.remaining()];
+            decoded.get(result);
+            return result;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Receives the members of a scanned object, returning false for members which make the object unsupported.
+     */
+    private interface FieldHandler {
+        boolean onString(byte[] json, int keyStart, int keyEnd, String value);
+
+        boolean onNumber(byte[] json, int keyStart, int keyEnd, long value);
+
+        boolean onLiteral(byte[] json, int keyStart, int keyEnd);
+    }
+
+    private static final class Header implements FieldHandler {
+        private String algorithm;
+        private String keyId;
+        private String subjectEncryption;
+
+        @Override
+        public boolean onString(byte[] json, int keyStart, int keyEnd, String value) {
+            if (keyEquals(json, keyStart, keyEnd, ALGORITHM_HEADER)) {
+                algorithm = value;
+            } else if (keyEquals(json, keyStart, keyEnd, KEY_ID_HEADER)) {
+                keyId = value;
+            } else if (keyEquals(json, keyStart, keyEnd, SUBJECT_ENCRYPTION_HEADER)) {
+                subjectEncryption = value;
+            }
+            return !keyEquals(json, keyStart, keyEnd, COMPRESSION_HEADER);
+        }
+
+        @Override
+        public boolean onNumber(byte[] json, int keyStart, int keyEnd, long value) {
+            return !isReadHeader(json, keyStart, keyEnd);
+        }
+
+        @Override
+        public boolean onLiteral(byte[] json, int keyStart, int keyEnd) {
+            return !isReadHeader(json, keyStart, keyEnd);
+        }
+
+        private static boolean isReadHeader(byte[] json, int keyStart, int keyEnd) {
+            return keyEquals(json, keyStart, keyEnd, ALGORITHM_HEADER) || keyEquals(json, keyStart, keyEnd, KEY_ID_HEADER)
+                    || keyEquals(json, keyStart, keyEnd, COMPRESSION_HEADER) || keyEquals(json, keyStart, keyEnd, SUBJECT_ENCRYPTION_HEADER);
+        }
+    }
+
+    /**
+     * Claims used by {@link TokenService}, read either by this verifier or from claims parsed by jjwt.
+     */
+    @Getter
+    static final class VerifiedClaims implements FieldHandler {
+        private final TokenKey tokenKey;
+        /**
+         * Whether subject and user claim are encrypted, as in HS512 signed tokens. RS256 signed tokens carry the user id
+         * as plain subject and user details in plain role, email and name claims instead.
+         */
+        private final boolean encrypted;
+        /**
+         * Cipher of the encrypted claims, taken from the header. Missing in tokens issued before it was recorded.
+         */
+        private final String subjectEncryption;
+        private String subject;
+        private Long expiration;
+        private String issuer;
+        private String tokenType;
+        private int tokenVersion;
+        private String user;
+        private String role;
+        private String email;
+        private String name;
+
+        VerifiedClaims(TokenKey tokenKey, String subjectEncryption) {
+            this.tokenKey = tokenKey;
+            this.encrypted = true;
+            this.subjectEncryption = subjectEncryption;
+        }
+
+        private VerifiedClaims(TokenKey tokenKey, boolean encrypted, String subjectEncryption, Claims claims) {
+            this.tokenKey = tokenKey;
+            this.encrypted = encrypted;
+            this.subjectEncryption = subjectEncryption;
+            Object tokenVersion = claims.get(TokenService.TOKEN_VERSION_CLAIM);
+            this.subject = stringClaim(claims, Claims.SUBJECT);
+            this.expiration = claims.getExpiration() == null ? null : claims.getExpiration().getTime();
+            this.issuer = stringClaim(claims, Claims.ISSUER);
+            this.tokenType = stringClaim(claims, TokenService.TOKEN_TYPE_CLAIM);
+            this.tokenVersion = tokenVersion instanceof Number ? ((Number) tokenVersion).intValue() : 0;
+            if (encrypted) {
+                this.user = stringClaim(claims, TokenService.USER_CLAIM);
+            } else {
+                this.role = stringClaim(claims, TokenService.ROLE_CLAIM);
+                this.email = stringClaim(claims, TokenService.EMAIL_CLAIM);
+                this.name = stringClaim(claims, TokenService.NAME_CLAIM);
+            }
+        }
+
+        /**
+         * Reads the claims from claims parsed by jjwt. Claims of other types than this verifier reads are left out.
+         */
+        static VerifiedClaims of(TokenKey tokenKey, Claims claims, boolean encrypted) {
+            return of(tokenKey, claims, encrypted, null);
+        }
+
+        static VerifiedClaims of(TokenKey tokenKey, Claims claims, boolean encrypted, String subjectEncryption) {
+            return new VerifiedClaims(tokenKey, encrypted, subjectEncryption, claims);
+        }
+
+        private static String stringClaim(Claims claims, String name) {
+            Object value = claims.get(name);
+            return value instanceof String ? (String) value : null;
+        }
+
+        @Override
+        public boolean onString(byte[] json, int keyStart, int keyEnd, String value) {
+            if (keyEquals(json, keyStart, keyEnd, SUBJECT_CLAIM)) {
+                subject = value;
+            } else if (keyEquals(json, keyStart, keyEnd, ISSUER_CLAIM)) {
+                issuer = value;
+            } else if (keyEquals(json, keyStart, keyEnd, TOKEN_TYPE_CLAIM)) {
+                tokenType = value;
+            } else if (keyEquals(json, keyStart, keyEnd, USER_CLAIM)) {
+                user = value;
+            } else {
+                return !isNumericClaim(json, keyStart, keyEnd);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onNumber(byte[] json, int keyStart, int keyEnd, long value) {
+            if (keyEquals(json, keyStart, keyEnd, EXPIRATION_CLAIM)) {
+                expiration = value * 1000;
+            } else if (keyEquals(json, keyStart, keyEnd, TOKEN_VERSION_CLAIM)) {
+                tokenVersion = (int) value;
+            } else {
+                return !isStringClaim(json, keyStart, keyEnd) && !keyEquals(json, keyStart, keyEnd, NOT_BEFORE_CLAIM);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onLiteral(byte[] json, int keyStart, int keyEnd) {
+            return !isStringClaim(json, keyStart, keyEnd) && !isNumericClaim(json, keyStart, keyEnd);
+        }
+
+        private static boolean isStringClaim(byte[] json, int keyStart, int keyEnd) {
+            return keyEquals(json, keyStart, keyEnd, SUBJECT_CLAIM) || keyEquals(json, keyStart, keyEnd, ISSUER_CLAIM)
+                    || keyEquals(json, keyStart, keyEnd, TOKEN_TYPE_CLAIM) || keyEquals(json, keyStart, keyEnd, USER_CLAIM);
+        }
+
+        /**
+         * Also covers {@code nbf}, which is not read but checked by jjwt.
+         */
+        private static boolean isNumericClaim(byte[] json, int keyStart, int keyEnd) {
+            return keyEquals(json, keyStart, keyEnd, EXPIRATION_CLAIM) || keyEquals(json, keyStart, keyEnd, TOKEN_VERSION_CLAIM)
+                    || keyEquals(json, keyStart, keyEnd, NOT_BEFORE_CLAIM);
+        }
+    }
+
+    /**
+     * {@link Mac#doFinal()} resets the instance, so it is reused for the next token and only initialized again when
+     * the key changes.
+     */
+    private static final class KeyedMac {
+        private final Mac mac;
+        private Key key;
+
+        KeyedMac() {
+            try {
+                mac = Mac.getInstance(CryptoService.HMAC_SHA512);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("HMAC-SHA512 is not supported", e);
+            }
+        }
+
+        byte[] sign(Key signingKey, byte[] content, int length) {
+            try {
+                if (signingKey != key) {
+                    mac.init(signingKey);
+                    key = signingKey;
+                }
+                mac.update(content, 0, length);
+                return mac.doFinal();
+            } catch (InvalidKeyException e) {
+                key = null;
+                throw new SignatureException("Invalid signing key", e);
+            }
+        }
+    }
+}
@@ -14,8 +14,6 @@ public class CookieOAuth2AuthorizationRequestService implements AuthorizationReq
     public static final String OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME = "oauth2_auth_request";
     public static final String REDIRECT_URI_PARAM_COOKIE_NAME = "redirect_uri";
     public static final String LANGUAGE_COOKIE_NAME = "language";
-    public static final String TWO_FACTOR_CODE = "two_factor_code";
-    public static final String RECOVERY_CODE = "recovery_code";
     private static final int cookieExpireSeconds = 180;
 
     @Override
@@ -31,8 +29,6 @@ public class CookieOAuth2AuthorizationRequestService implements AuthorizationReq
             CookieUtils.deleteCookie(request, response, OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME);
             CookieUtils.deleteCookie(request, response, REDIRECT_URI_PARAM_COOKIE_NAME);
             CookieUtils.deleteCookie(request, response, LANGUAGE_COOKIE_NAME);
-            CookieUtils.deleteCookie(request, response, TWO_FACTOR_CODE);
-            CookieUtils.deleteCookie(request, response, RECOVERY_CODE);
             return;
         }
 
@@ -47,15 +43,6 @@ public class CookieOAuth2AuthorizationRequestService implements AuthorizationReq
         } else {
             CookieUtils.addCookie(response, LANGUAGE_COOKIE_NAME, "en", cookieExpireSeconds);
         }
-        String twoFactorCode = request.getParameter(TWO_FACTOR_CODE);
-        if (StringUtils.isNotBlank(twoFactorCode)) {
-            CookieUtils.addCookie(response, TWO_FACTOR_CODE, twoFactorCode, cookieExpireSeconds);
-        }
-
-        String recoveryCode = request.getParameter(RECOVERY_CODE);
-        if (StringUtils.isNotBlank(recoveryCode)) {
-            CookieUtils.addCookie(response, RECOVERY_CODE, recoveryCode, cookieExpireSeconds);
-        }
     }
 
     @Override
@@ -67,7 +54,5 @@ public class CookieOAuth2AuthorizationRequestService implements AuthorizationReq
         CookieUtils.deleteCookie(request, response, OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME);
         CookieUtils.deleteCookie(request, response, REDIRECT_URI_PARAM_COOKIE_NAME);
         CookieUtils.deleteCookie(request, response, LANGUAGE_COOKIE_NAME);
-        CookieUtils.deleteCookie(request, response, TWO_FACTOR_CODE);
-        CookieUtils.deleteCookie(request, response, RECOVERY_CODE);
     }
 }
@@ -3,43 +3,154 @@ package com.example.fullstacktemplate.service;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
 @Service
 public class CryptoService {
 
-    public  String encrypt(String algorithm, String input, SecretKey key,
-                                 IvParameterSpec iv) throws NoSuchPaddingException, NoSuchAlgorithmException,
+    public static final String AES_CBC = "AES/CBC/PKCS5Padding";
+    public static final String AES_GCM = "AES/GCM/NoPadding";
+    public static final String HMAC_SHA512 = "HmacSHA512";
+    public static final String RSA = "RSA";
+    private static final int RSA_KEY_SIZE = 2048;
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH_BITS = 128;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    /**
+     * Cipher instances are not thread safe, so each thread keeps its own instance per algorithm and only re-initializes it.
+     */
+    private final ThreadLocal<Map<String, Cipher>> ciphers = ThreadLocal.withInitial(HashMap::new);
+
+    public String encrypt(String algorithm, String input, SecretKey key,
+                          IvParameterSpec iv) throws NoSuchPaddingException, NoSuchAlgorithmException,
             InvalidAlgorithmParameterException, InvalidKeyException,
             BadPaddingException, IllegalBlockSizeException {
 
-        Cipher cipher = Cipher.getInstance(algorithm);
+        Cipher cipher = getCipher(algorithm);
         cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-        byte[] cipherText = cipher.doFinal(input.getBytes());
+        byte[] cipherText = cipher.doFinal(input.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder()
                 .encodeToString(cipherText);
     }
 
     public String decrypt(String algorithm, String cipherText, SecretKey key,
-                                 IvParameterSpec iv) throws NoSuchPaddingException, NoSuchAlgorithmException,
+                          IvParameterSpec iv) throws NoSuchPaddingException, NoSuchAlgorithmException,
             InvalidAlgorithmParameterException, InvalidKeyException,
             BadPaddingException, IllegalBlockSizeException {
 
-        Cipher cipher = Cipher.getInstance(algorithm);
+        Cipher cipher = getCipher(algorithm);
         cipher.init(Cipher.DECRYPT_MODE, key, iv);
         byte[] plainText = cipher.doFinal(Base64.getDecoder()
                 .decode(cipherText));
-        return new String(plainText);
+        return new String(plainText, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encrypts input with AES-GCM using a fresh random nonce. The nonce is prepended to the cipher text.
+     */
+    public String encrypt(String input, SecretKey key) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException,
+            BadPaddingException, IllegalBlockSizeException {
+
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        Cipher cipher = getCipher(AES_GCM);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH_BITS, nonce));
+        byte[] plainText = input.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer output = ByteBuffer.allocate(GCM_NONCE_LENGTH + cipher.getOutputSize(plainText.length));
+        output.put(nonce);
+        try {
+            cipher.doFinal(ByteBuffer.wrap(plainText), output);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Output buffer is too small", e);
+        }
+        return Base64.getEncoder()
+                .encodeToString(output.array());
+    }
+
+    /**
+     * Decrypts cipher text produced by {@link #encrypt(String, SecretKey)}.
+     */
+    public String decrypt(String cipherText, SecretKey key) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException,
+            BadPaddingException, IllegalBlockSizeException {
+
+        byte[] input = Base64.getDecoder().decode(cipherText);
+        if (input.length <= GCM_NONCE_LENGTH) {
+            throw new IllegalBlockSizeException("Cipher text is too short");
+        }
+        Cipher cipher = getCipher(AES_GCM);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH_BITS, input, 0, GCM_NONCE_LENGTH));
+        byte[] plainText = cipher.doFinal(input, GCM_NONCE_LENGTH, input.length - GCM_NONCE_LENGTH);
+        return new String(plainText, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns 256 random bits encoded as unpadded base64url.
+     */
+    public String generateOpaqueToken() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(generateSecret(32));
+    }
+
+    public byte[] generateSecret(int length) {
+        byte[] secret = new byte[length];
+        secureRandom.nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * Returns url safe base64 encoded SHA-256 digest of the input. The result has always 43 characters.
+     */
+    public String hash(String input) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Derives key material bound to {@code purpose} from the secret, so one stored secret can back several keys.
+     */
+    public byte[] deriveKey(byte[] secret, String purpose) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_SHA512);
+            mac.init(new SecretKeySpec(secret, HMAC_SHA512));
+            return mac.doFinal(purpose.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException("Could not derive key", e);
+        }
+    }
+
+    public KeyPair generateRsaKeyPair() {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(RSA);
+            keyPairGenerator.initialize(RSA_KEY_SIZE, secureRandom);
+            return keyPairGenerator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA is not supported", e);
+        }
     }
 
     public IvParameterSpec generateInitializationVector() {
         byte[] iv = new byte[16];
-        new SecureRandom().nextBytes(iv);
+        secureRandom.nextBytes(iv);
         return new IvParameterSpec(iv);
     }
 
@@ -49,4 +160,14 @@ public class CryptoService {
         SecretKey key = keyGenerator.generateKey();
         return key;
     }
+
+    private Cipher getCipher(String algorithm) throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Map<String, Cipher> threadCiphers = ciphers.get();
+        Cipher cipher = threadCiphers.get(algorithm);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(algorithm);
+            threadCiphers.put(algorithm, cipher);
+        }
+        return cipher;
+    }
 }
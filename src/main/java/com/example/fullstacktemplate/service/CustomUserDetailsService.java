@@ -6,6 +6,7 @@ import com.example.fullstacktemplate.repository.UserRepository;
 import com.example.fullstacktemplate.config.security.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,7 +15,7 @@ import org.springframework.web.servlet.LocaleResolver;
 import java.util.Optional;
 
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
    private final UserRepository userRepository;
 
@@ -35,4 +36,19 @@ public class CustomUserDetailsService implements UserDetailsService {
         Optional<User> optionalUser = userRepository.findById(id);
         return optionalUser.map(UserPrincipal::create);
     }
+
+    /**
+     * Called after a successful password check when the stored hash was made with other parameters than the configured
+     * ones, so the hash is replaced without the user noticing. The user loaded for the password check is updated, so
+     * no further lookup is needed.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserPrincipal userPrincipal = (UserPrincipal) user;
+        User storedUser = Optional.ofNullable(userPrincipal.getUser())
+                .orElseGet(() -> userRepository.findById(userPrincipal.getId()).orElseThrow());
+        storedUser.setPassword(newPassword);
+        return UserPrincipal.create(userRepository.save(storedUser));
+    }
 }
@@ -0,0 +1,19 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.FileType;
+import lombok.Getter;
+
+/**
+ * Published when a file with new content is stored; not published when an existing file is reused.
+ */
+@Getter
+public class FileCreatedEvent {
+
+    private final Long fileId;
+    private final FileType type;
+
+    public FileCreatedEvent(Long fileId, FileType type) {
+        this.fileId = fileId;
+        this.type = type;
+    }
+}
@@ -1,36 +1,217 @@
 package com.example.fullstacktemplate.service;
 
+import com.example.fullstacktemplate.config.AppProperties;
 import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
 import com.example.fullstacktemplate.model.FileType;
 import com.example.fullstacktemplate.repository.FileDbRepository;
+import com.example.fullstacktemplate.service.storage.FileStorage;
+import com.example.fullstacktemplate.service.storage.StoredFile;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.imageio.ImageIO;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URLConnection;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class FileDbService {
 
+    /**
+     * A file found by its content hash may be deleted before it is referenced, then its content is inserted once more.
+     */
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
     private final FileDbRepository fileDBRepository;
+    private final Map<FileStorageType, FileStorage> fileStorages = new EnumMap<>(FileStorageType.class);
+    private final FileStorage defaultFileStorage;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final Duration unreferencedContentGracePeriod;
+    private final TransactionTemplate insertTransaction;
 
-    public FileDbService(FileDbRepository fileDBRepository) {
+    public FileDbService(FileDbRepository fileDBRepository, List<FileStorage> fileStorages, AppProperties appProperties, ApplicationEventPublisher applicationEventPublisher, PlatformTransactionManager transactionManager) {
         this.fileDBRepository = fileDBRepository;
+        this.insertTransaction = new TransactionTemplate(transactionManager);
+        this.insertTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.applicationEventPublisher = applicationEventPublisher;
+        fileStorages.forEach(fileStorage -> this.fileStorages.put(fileStorage.getType(), fileStorage));
+        this.defaultFileStorage = getFileStorage(appProperties.getFileStorage().getType());
+        this.unreferencedContentGracePeriod = appProperties.getFileStorage().getUnreferencedContentGracePeriod();
     }
 
+    /**
+     * Returns a file with the given content, reusing an existing file with the same content hash if there is one.
+     * Every call takes a new reference, which has to be given back with {@link #release(Long)}.
+     * <p>
+     * A new file is inserted without references in a transaction of its own, so that when a concurrent upload of the
+     * same content inserted it first, only that insert fails on the unique content hash and the file of the concurrent
+     * upload is referenced instead. An unreferenced file left behind by a rolled back caller is reused by the next save
+     * of its content. The file is returned loaded, since callers outside of a transaction could not load a reference.
+     */
+    @Transactional
     public FileDb save(String name, FileType type, byte[] data) {
-        FileDb FileDB = new FileDb(name, type, data);
-        return fileDBRepository.save(FileDB);
+        String contentHash = DigestUtils.sha256Hex(data);
+        for (int attempt = 1; ; attempt++) {
+            Optional<Long> existingFileId = fileDBRepository.findIdByOriginalContentHash(contentHash);
+            if (existingFileId.isPresent() && fileDBRepository.incrementReferenceCount(existingFileId.get()) > 0) {
+                return fileDBRepository.findById(existingFileId.get()).orElseThrow();
+            }
+            try {
+                insertTransaction.executeWithoutResult(status -> insert(name, type, contentHash, data));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_SAVE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void insert(String name, FileType type, String contentHash, byte[] data) {
+        FileDb fileDb = new FileDb();
+        fileDb.setName(name);
+        fileDb.setType(type);
+        fileDb.setContentHash(contentHash);
+        fileDb.setSize((long) data.length);
+        fileDb.setReferenceCount(0);
+        store(defaultFileStorage, fileDb, data);
+        fileDb = fileDBRepository.save(fileDb);
+        applicationEventPublisher.publishEvent(new FileCreatedEvent(fileDb.getId(), type));
+    }
+
+    /**
+     * Stores a downscaled variant of the given original. Nothing is stored if the original was deleted meanwhile.
+     */
+    @Transactional
+    public void saveVariant(Long originalId, int variantSize, FileType type, byte[] data) {
+        Optional<FileDb> original = fileDBRepository.findById(originalId);
+        if (original.isEmpty()) {
+            return;
+        }
+        FileDb variant = new FileDb();
+        variant.setName(original.get().getName());
+        variant.setType(type);
+        variant.setContentHash(DigestUtils.sha256Hex(data));
+        variant.setSize((long) data.length);
+        variant.setReferenceCount(1);
+        variant.setOriginalId(originalId);
+        variant.setVariantSize(variantSize);
+        store(defaultFileStorage, variant, data);
+        fileDBRepository.save(variant);
+    }
+
+    /**
+     * Returns the smallest variant of the file which is at least {@code size} pixels large.
+     */
+    public Optional<Long> findVariantId(Long id, int size) {
+        return fileDBRepository.findVariantIds(id, size, PageRequest.of(0, 1)).stream().findFirst();
     }
 
+    /**
+     * Gives back a reference taken by {@link #save(String, FileType, byte[])}. The file is deleted once nobody
+     * references it. Content in the filesystem storage is left in place, since a file saved concurrently may share it,
+     * and is deleted later by {@link #deleteUnreferencedContent()}.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = "file", key = "#id")
+    public void release(Long id) {
+        fileDBRepository.decrementReferenceCount(id);
+        if (fileDBRepository.deleteIfUnreferenced(id) > 0) {
+            fileDBRepository.deleteVariants(id);
+        }
+    }
+
+    /**
+     * Deletes content of the storages which no file references any more.
+     *
+     * @return number of deleted contents
+     */
+    public long deleteUnreferencedContent() {
+        long deleted = 0;
+        for (FileStorage fileStorage : fileStorages.values()) {
+            try {
+                deleted += fileStorage.deleteUnreferencedContent(contentHashes -> fileDBRepository.findContentHashesInStorage(fileStorage.getType(), contentHashes), unreferencedContentGracePeriod);
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Error while deleting unreferenced content of file storage %s", fileStorage.getType()), e);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Cached as an immutable snapshot, so no entity is shared between requests or outlives its session.
+     */
     @Cacheable(cacheNames = "file", key = "#id")
-    public Optional<FileDb> findById(Long id) {
-        return fileDBRepository.findById(id);
+    public Optional<StoredFile> findById(Long id) {
+        return fileDBRepository.findById(id).map(StoredFile::new);
+    }
+
+    /**
+     * Returns the original file, not a variant, with the given content.
+     */
+    public Optional<Long> findIdByContentHash(String contentHash) {
+        return fileDBRepository.findIdByOriginalContentHash(contentHash);
     }
 
+    public Optional<String> findContentHash(Long id) {
+        return fileDBRepository.findContentHashById(id);
+    }
+
+    public byte[] readContent(StoredFile storedFile) {
+        try {
+            return getFileStorage(storedFile.getStorageType()).read(storedFile);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error while reading content of file %s", storedFile.getId()), e);
+        }
+    }
+
+    public void transferContent(StoredFile storedFile, OutputStream outputStream) throws IOException {
+        getFileStorage(storedFile.getStorageType()).transferTo(storedFile, outputStream);
+    }
+
+    /**
+     * Returns ids of files kept outside of the given storage, ordered by id and starting after {@code lastId}.
+     */
+    public List<Long> findIdsNotInStorage(FileStorageType storageType, Long lastId, int limit) {
+        return fileDBRepository.findIdsNotInStorage(storageType, lastId, PageRequest.of(0, limit));
+    }
+
+    @Transactional
+    @CacheEvict(cacheNames = "file", key = "#id")
+    public void moveToStorage(Long id, FileStorageType storageType) {
+        FileDb fileDb = fileDBRepository.findById(id).orElseThrow(() -> new IllegalArgumentException(String.format("File %s does not exist", id)));
+        if (fileDb.getStorageType() != storageType) {
+            byte[] data = readContent(new StoredFile(fileDb));
+            store(getFileStorage(storageType), fileDb, data);
+            fileDBRepository.save(fileDb);
+        }
+    }
+
+    private void store(FileStorage fileStorage, FileDb fileDb, byte[] data) {
+        try {
+            fileStorage.store(fileDb, data);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error while storing file %s", fileDb.getName()), e);
+        }
+    }
+
+    private FileStorage getFileStorage(FileStorageType storageType) {
+        FileStorage fileStorage = fileStorages.get(storageType);
+        if (fileStorage == null) {
+            throw new IllegalStateException(String.format("File storage %s is not available", storageType));
+        }
+        return fileStorage;
+    }
 }
@@ -0,0 +1,212 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.exception.ServiceUnavailableException;
+import com.example.fullstacktemplate.model.FileType;
+import com.example.fullstacktemplate.service.storage.StoredFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Creates downscaled variants of uploaded images, so small avatars are not served from multi-megabyte originals.
+ * Uploads and their variants are re-encoded from pixels only, which drops all metadata of the uploaded file.
+ * <p>
+ * All decoding and encoding runs on the bounded image executor, so at most its threads hold decoded images and take
+ * CPU from request threads, whatever the number of concurrent uploads.
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+    private final FileDbService fileDbService;
+    private final AppProperties appProperties;
+    private final AsyncTaskExecutor imageExecutor;
+    private final Timer variantsTimer;
+
+    public ImageVariantService(FileDbService fileDbService, AppProperties appProperties, @Qualifier("imageExecutor") AsyncTaskExecutor imageExecutor, MeterRegistry meterRegistry) {
+        this.fileDbService = fileDbService;
+        this.appProperties = appProperties;
+        this.imageExecutor = imageExecutor;
+        this.variantsTimer = Timer.builder("image.variants").register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    public void onFileCreated(FileCreatedEvent event) {
+        try {
+            imageExecutor.execute(() -> variantsTimer.record(() -> createVariants(event.getFileId())));
+        } catch (TaskRejectedException e) {
+            log.warn("Image executor is saturated, variants of file {} are not created", event.getFileId());
+        }
+    }
+
+    public void createVariants(Long fileId) {
+        Optional<StoredFile> file = fileDbService.findById(fileId);
+        if (file.isEmpty()) {
+            return;
+        }
+        try {
+            BufferedImage image = decode(fileDbService.readContent(file.get()));
+            boolean hasAlpha = image.getColorModel().hasAlpha();
+            FileType type = hasAlpha ? FileType.IMAGE_PNG : FileType.IMAGE_JPEG;
+            int imageSize = Math.max(image.getWidth(), image.getHeight());
+            for (Integer variantSize : appProperties.getImage().getVariantSizes()) {
+                if (variantSize < imageSize) {
+                    BufferedImage variant = resize(image, variantSize, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                    fileDbService.saveVariant(fileId, variantSize, type, encode(variant, type));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not create variants of file {}", fileId, e);
+        }
+    }
+
+    /**
+     * Re-encodes an uploaded image before it is stored, so metadata such as the location of a photo is never served.
+     * PNG stays lossless, JPEG is encoded with the quality of the variants. The uploading thread waits for the image
+     * executor at most {@code app.image.uploadTimeout}.
+     *
+     * @throws IOException                 if the content is not a supported image
+     * @throws ServiceUnavailableException if the image executor is saturated or does not finish in time
+     */
+    public byte[] stripMetadata(byte[] content, FileType type) throws IOException {
+        Future<byte[]> future;
+        try {
+            future = imageExecutor.submit(() -> reencode(content, type));
+        } catch (TaskRejectedException e) {
+            throw new ServiceUnavailableException("serverBusy");
+        }
+        try {
+            return future.get(appProperties.getImage().getUploadTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ServiceUnavailableException("serverBusy");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for image processing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private byte[] reencode(byte[] content, FileType type) throws IOException {
+        BufferedImage image = decode(content);
+        if (type == FileType.IMAGE_JPEG && image.getColorModel().hasAlpha()) {
+            image = resize(image, Math.max(image.getWidth(), image.getHeight()), BufferedImage.TYPE_INT_RGB);
+        }
+        return encode(image, type);
+    }
+
+    /**
+     * Detects the type of an image from its content, for images whose declared type cannot be trusted.
+     *
+     * @return type of the image or empty optional when it is no supported image
+     */
+    public Optional<FileType> detectType(byte[] content) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            return Arrays.stream(readers.next().getOriginatingProvider().getMIMETypes())
+                    .map(FileType::fromMimeType)
+                    .flatMap(Optional::stream)
+                    .findFirst();
+        }
+    }
+
+    private BufferedImage decode(byte[] content) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > appProperties.getImage().getMaxPixels()) {
+                    throw new IOException(String.format("Image has too many pixels (%d)", pixels));
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the image to fit into a square of the given size. Large reductions are done in halving steps, since a
+     * single bilinear step skips most of the source pixels and produces aliasing.
+     */
+    private BufferedImage resize(BufferedImage source, int size, int imageType) {
+        double scale = (double) size / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, imageType);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, width, height, null);
+            graphics.dispose();
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image, FileType type) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByMIMEType(type.getMimeType()).next();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (type == FileType.IMAGE_JPEG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(appProperties.getImage().getQuality());
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
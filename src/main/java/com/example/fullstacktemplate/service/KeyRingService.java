@@ -0,0 +1,224 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.TokenKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keys used to sign tokens and encrypt their subject. Keys are kept in a JSON file, so tokens stay valid across
+ * restarts and on every instance sharing the file. Each key has a {@code kid} which is written into the header of
+ * issued tokens, and tokens are verified with the key they name, so old keys keep verifying after a rotation.
+ * <p>
+ * A new key is only used for signing after {@code activationDelay}, which gives other instances time to load it.
+ * A key is dropped once its successor is active for longer than any token lives.
+ * Without a configured path the key ring lives only in memory.
+ * <p>
+ * With {@code RS256} signatures each new key also gets an RSA key pair, whose public part is published as JWKS.
+ */
+@Service
+@Slf4j
+public class KeyRingService {
+
+    private static final int SECRET_LENGTH = 64;
+    private static final int AES_KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 16;
+
+    private final AppProperties appProperties;
+    private final CryptoService cryptoService;
+    private final ObjectMapper objectMapper;
+    private final Path path;
+    private List<StoredKey> storedKeys = new ArrayList<>();
+    private volatile List<TokenKey> keys = List.of();
+    private volatile Map<String, TokenKey> keysById = Map.of();
+
+    public KeyRingService(AppProperties appProperties, CryptoService cryptoService, ObjectMapper objectMapper) throws IOException {
+        this.appProperties = appProperties;
+        this.cryptoService = cryptoService;
+        this.objectMapper = objectMapper;
+        String configuredPath = appProperties.getAuth().getKeyRing().getPath();
+        this.path = StringUtils.hasText(configuredPath) ? Paths.get(configuredPath).toAbsolutePath() : null;
+        refresh();
+    }
+
+    /**
+     * Returns the newest key which is active already.
+     */
+    public TokenKey getSigningKey() {
+        List<TokenKey> currentKeys = keys;
+        Instant activeBefore = Instant.now().minus(appProperties.getAuth().getKeyRing().getActivationDelay());
+        for (int i = currentKeys.size() - 1; i > 0; i--) {
+            if (!currentKeys.get(i).getCreatedAt().isAfter(activeBefore)) {
+                return currentKeys.get(i);
+            }
+        }
+        return currentKeys.get(0);
+    }
+
+    /**
+     * Returns all keys which can still have signed a valid token, including keys which are not active yet.
+     */
+    public List<TokenKey> getKeys() {
+        return keys;
+    }
+
+    public Optional<TokenKey> findKey(String kid) {
+        return kid == null ? Optional.empty() : Optional.ofNullable(keysById.get(kid));
+    }
+
+    /**
+     * Loads keys added by other instances, adds a new key when the newest one is older than the rotation period and
+     * drops keys which can no longer have signed an unexpired token. The file is locked meanwhile, so concurrent
+     * instances do not overwrite each other's keys.
+     */
+    public synchronized void refresh() throws IOException {
+        if (path == null) {
+            storedKeys = update(storedKeys);
+        } else {
+            Files.createDirectories(path.getParent());
+            Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                List<StoredKey> loadedKeys = Files.exists(path)
+                        ? new ArrayList<>(objectMapper.readValue(path.toFile(), StoredKeyRing.class).getKeys())
+                        : new ArrayList<>();
+                List<StoredKey> updatedKeys = update(loadedKeys);
+                if (!updatedKeys.equals(loadedKeys)) {
+                    write(updatedKeys);
+                }
+                storedKeys = updatedKeys;
+            }
+        }
+        Map<String, TokenKey> previousKeys = keysById;
+        List<TokenKey> tokenKeys = storedKeys.stream()
+                .map(storedKey -> Optional.ofNullable(previousKeys.get(storedKey.getKid())).orElseGet(() -> toTokenKey(storedKey)))
+                .collect(Collectors.toUnmodifiableList());
+        keysById = tokenKeys.stream().collect(Collectors.toUnmodifiableMap(TokenKey::getKid, Function.identity()));
+        keys = tokenKeys;
+    }
+
+    private List<StoredKey> update(List<StoredKey> currentKeys) {
+        AppProperties.KeyRing keyRing = appProperties.getAuth().getKeyRing();
+        Instant now = Instant.now();
+        List<StoredKey> updatedKeys = new ArrayList<>(currentKeys);
+        updatedKeys.sort(Comparator.comparing(StoredKey::getCreatedAt));
+        Duration rotationPeriod = keyRing.getRotationPeriod();
+        boolean rsaRequired = SignatureAlgorithm.RS256.name().equals(appProperties.getAuth().getSignatureAlgorithm());
+        StoredKey newestKey = updatedKeys.isEmpty() ? null : updatedKeys.get(updatedKeys.size() - 1);
+        if (newestKey == null
+                || (!rotationPeriod.isZero() && newestKey.getCreatedAt().plus(rotationPeriod).isBefore(now))
+                || (rsaRequired && newestKey.getPublicKey() == null)) {
+            StoredKey newKey = new StoredKey();
+            newKey.setKid(Base64.getUrlEncoder().withoutPadding().encodeToString(cryptoService.generateSecret(9)));
+            newKey.setCreatedAt(now);
+            newKey.setSecret(Base64.getEncoder().encodeToString(cryptoService.generateSecret(SECRET_LENGTH)));
+            if (rsaRequired) {
+                KeyPair keyPair = cryptoService.generateRsaKeyPair();
+                newKey.setPrivateKey(Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+                newKey.setPublicKey(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+            }
+            updatedKeys.add(newKey);
+            log.info("Added key {} to the key ring", newKey.getKid());
+        }
+        Duration retention = keyRing.getActivationDelay().plus(getMaxTokenLifetime());
+        while (updatedKeys.size() > 1 && updatedKeys.get(1).getCreatedAt().plus(retention).isBefore(now)) {
+            log.info("Removed key {} from the key ring", updatedKeys.remove(0).getKid());
+        }
+        return updatedKeys;
+    }
+
+    private Duration getMaxTokenLifetime() {
+        AppProperties.Auth auth = appProperties.getAuth();
+        long maxLifetimeMsec = Math.max(auth.getAccessTokenExpirationMsec(), auth.getVerificationTokenExpirationMsec());
+        if (!auth.isOpaqueRefreshTokens()) {
+            maxLifetimeMsec = Math.max(maxLifetimeMsec, auth.getRefreshTokenExpirationMsec());
+        }
+        return Duration.ofMillis(maxLifetimeMsec);
+    }
+
+    private void write(List<StoredKey> keysToWrite) throws IOException {
+        Path temporaryFile = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            StoredKeyRing storedKeyRing = new StoredKeyRing();
+            storedKeyRing.setKeys(keysToWrite);
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temporaryFile.toFile(), storedKeyRing);
+            Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private TokenKey toTokenKey(StoredKey storedKey) {
+        byte[] secret = Base64.getDecoder().decode(storedKey.getSecret());
+        byte[] encryptionMaterial = cryptoService.deriveKey(secret, "subject-encryption");
+        return new TokenKey(
+                storedKey.getKid(),
+                storedKey.getCreatedAt(),
+                new SecretKeySpec(secret, CryptoService.HMAC_SHA512),
+                new SecretKeySpec(encryptionMaterial, 0, AES_KEY_LENGTH, "AES"),
+                new IvParameterSpec(encryptionMaterial, AES_KEY_LENGTH, IV_LENGTH),
+                storedKey.getPublicKey() == null ? null : toKeyPair(storedKey)
+        );
+    }
+
+    private KeyPair toKeyPair(StoredKey storedKey) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance(CryptoService.RSA);
+            return new KeyPair(
+                    keyFactory.generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(storedKey.getPublicKey()))),
+                    keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(storedKey.getPrivateKey())))
+            );
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException(String.format("Invalid RSA key pair of key %s", storedKey.getKid()), e);
+        }
+    }
+
+    @Getter
+    @Setter
+    static class StoredKeyRing {
+        private List<StoredKey> keys = new ArrayList<>();
+    }
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode(of = "kid")
+    static class StoredKey {
+        private String kid;
+        private Instant createdAt;
+        private String secret;
+        private String privateKey;
+        private String publicKey;
+    }
+}
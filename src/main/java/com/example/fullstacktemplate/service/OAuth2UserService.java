@@ -4,11 +4,11 @@ import com.example.fullstacktemplate.config.security.UserPrincipal;
 import com.example.fullstacktemplate.config.security.oauth2.user.OAuth2UserInfo;
 import com.example.fullstacktemplate.config.security.oauth2.user.OAuth2UserInfoFactory;
 import com.example.fullstacktemplate.exception.OAuth2AuthenticationProcessingException;
+import com.example.fullstacktemplate.exception.ServiceUnavailableException;
 import com.example.fullstacktemplate.model.*;
 import com.example.fullstacktemplate.repository.UserRepository;
 import dev.samstevens.totp.secret.SecretGenerator;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
@@ -19,21 +19,31 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.Optional;
 
 @Service
 @Slf4j
 public class OAuth2UserService extends DefaultOAuth2UserService {
 
+    private static final int IMAGE_DOWNLOAD_TIMEOUT_MSEC = 5000;
+
     private final UserRepository userRepository;
     private final SecretGenerator twoFactorSecretGenerator;
     private final MessageService messageService;
+    private final FileDbService fileDbService;
+    private final ImageVariantService imageVariantService;
+    private final UserService userService;
 
-    public OAuth2UserService(UserRepository userRepository, SecretGenerator twoFactorSecretGenerator, MessageService messageService) {
+    public OAuth2UserService(UserRepository userRepository, SecretGenerator twoFactorSecretGenerator, MessageService messageService, FileDbService fileDbService, ImageVariantService imageVariantService, UserService userService) {
         this.userRepository = userRepository;
         this.twoFactorSecretGenerator = twoFactorSecretGenerator;
         this.messageService = messageService;
+        this.fileDbService = fileDbService;
+        this.imageVariantService = imageVariantService;
+        this.userService = userService;
     }
 
     @Override
@@ -49,7 +59,7 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
         }
     }
 
-    private OAuth2User processOAuth2User(OAuth2UserRequest oAuth2UserRequest, OAuth2User oAuth2User) throws IOException, AuthenticationException {
+    private OAuth2User processOAuth2User(OAuth2UserRequest oAuth2UserRequest, OAuth2User oAuth2User) throws AuthenticationException {
         OAuth2UserInfo oAuth2UserInfo = OAuth2UserInfoFactory.getOAuth2UserInfo(oAuth2UserRequest.getClientRegistration().getRegistrationId(), oAuth2User.getAttributes());
         if (StringUtils.isEmpty(oAuth2UserInfo.getEmail())) {
             throw new OAuth2AuthenticationProcessingException(messageService.getMessage("emailNotFoundFromO2Auth"));
@@ -73,7 +83,7 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
         return UserPrincipal.create(user, oAuth2User.getAttributes());
     }
 
-    private User registerNewUser(OAuth2UserRequest oAuth2UserRequest, OAuth2UserInfo oAuth2UserInfo) throws IOException {
+    private User registerNewUser(OAuth2UserRequest oAuth2UserRequest, OAuth2UserInfo oAuth2UserInfo) {
         User user = new User();
         user.setEmailVerified(true);
         user.setAuthProvider(AuthProvider.valueOf(oAuth2UserRequest.getClientRegistration().getRegistrationId()));
@@ -91,10 +101,34 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
         user.setTwoFactorSecret(twoFactorSecretGenerator.generate());
         user.setTwoFactorEnabled(false);
         user.setRole(Role.USER);
-        URL url = new URL(oAuth2UserInfo.getImageUrl());
-        FileDb profileImage = new FileDb("profile_image.png", FileType.fromMimeType(url.openConnection().getContentType()).orElse(FileType.IMAGE_PNG), IOUtils.toByteArray(url));
-        user.setProfileImage(profileImage);
+        user.setProfileImage(saveProfileImage(oAuth2UserInfo.getImageUrl()));
         return userRepository.save(user);
     }
 
+    /**
+     * Stores the image of the provider without its metadata. The type is detected from the content, since providers do
+     * not always send a content type. Images which cannot be downloaded or decoded, such as SVG or WebP avatars, are
+     * replaced by the default image rather than failing the login.
+     */
+    private FileDb saveProfileImage(String imageUrl) {
+        if (!StringUtils.hasText(imageUrl)) {
+            return userService.saveDefaultProfileImage();
+        }
+        try {
+            URLConnection connection = new URL(imageUrl).openConnection();
+            connection.setConnectTimeout(IMAGE_DOWNLOAD_TIMEOUT_MSEC);
+            connection.setReadTimeout(IMAGE_DOWNLOAD_TIMEOUT_MSEC);
+            byte[] content;
+            try (InputStream input = connection.getInputStream()) {
+                content = input.readAllBytes();
+            }
+            FileType type = imageVariantService.detectType(content).orElseThrow(() -> new IOException("Unsupported image format"));
+            String name = type == FileType.IMAGE_JPEG ? "profile_image.jpg" : "profile_image.png";
+            return fileDbService.save(name, type, imageVariantService.stripMetadata(content, type));
+        } catch (IOException | ServiceUnavailableException e) {
+            log.warn("Could not store profile image {}, using the default one", imageUrl, e);
+            return userService.saveDefaultProfileImage();
+        }
+    }
+
 }
@@ -0,0 +1,131 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.exception.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits requests which check passwords or send emails per client address and per email, and token introspection
+ * requests per client, before any of that work is done. Two-factor codes are limited per user as well, since one
+ * password check hands out challenges to clients at many addresses. Each key has a token bucket kept as the single
+ * timestamp at which it is full again (GCRA), updated by compare-and-set without locking. A bucket left alone for the
+ * whole period is full anyway, so buckets expire after that long without access and lose nothing. The number of
+ * buckets is bounded as well; under a flood of distinct keys the least recently used ones are dropped, which gives
+ * their keys a full bucket again.
+ * <p>
+ * IPv6 clients usually own a whole /64 network, so they are limited per /64 instead of per address.
+ */
+@Service
+public class RateLimitService {
+
+    private static final int IPV6_PREFIX_BYTES = 8;
+
+    private final Limiter ipLimiter;
+    private final Limiter emailLimiter;
+    private final Limiter introspectionClientLimiter;
+    private final Limiter twoFactorUserLimiter;
+
+    public RateLimitService(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.RateLimit rateLimit = appProperties.getAuth().getRateLimit();
+        this.ipLimiter = new Limiter("ip", rateLimit.getPerIp(), rateLimit.getMaximumKeys(), meterRegistry);
+        this.emailLimiter = new Limiter("email", rateLimit.getPerEmail(), rateLimit.getMaximumKeys(), meterRegistry);
+        this.introspectionClientLimiter = new Limiter("introspectionClient", rateLimit.getPerIntrospectionClient(), rateLimit.getMaximumKeys(), meterRegistry);
+        this.twoFactorUserLimiter = new Limiter("twoFactorUser", rateLimit.getPerTwoFactorUser(), rateLimit.getMaximumKeys(), meterRegistry);
+    }
+
+    public void acquire(String remoteAddress) {
+        ipLimiter.acquire(toNetwork(remoteAddress));
+    }
+
+    public void acquire(String remoteAddress, String email) {
+        acquire(remoteAddress);
+        if (StringUtils.hasText(email)) {
+            emailLimiter.acquire(email.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public void acquireIntrospection(String clientId) {
+        introspectionClientLimiter.acquire(clientId);
+    }
+
+    public void acquireTwoFactor(Long userId) {
+        twoFactorUserLimiter.acquire(String.valueOf(userId));
+    }
+
+    private static String toNetwork(String remoteAddress) {
+        if (remoteAddress == null || remoteAddress.indexOf(':') < 0) {
+            return String.valueOf(remoteAddress);
+        }
+        try {
+            InetAddress address = InetAddress.getByName(remoteAddress);
+            if (address instanceof Inet6Address) {
+                byte[] network = Arrays.copyOf(address.getAddress(), 16);
+                Arrays.fill(network, IPV6_PREFIX_BYTES, network.length, (byte) 0);
+                return InetAddress.getByAddress(network).getHostAddress();
+            }
+            return address.getHostAddress();
+        } catch (UnknownHostException e) {
+            return remoteAddress;
+        }
+    }
+
+    private static final class Limiter {
+
+        private final long periodNanos;
+        private final long intervalNanos;
+        private final Cache<String, AtomicLong> buckets;
+        private final Counter limitedRequests;
+
+        Limiter(String name, AppProperties.Limit limit, long maximumKeys, MeterRegistry meterRegistry) {
+            this.periodNanos = limit.getPeriod().toNanos();
+            this.intervalNanos = limit.getRequests() > 0 ? periodNanos / limit.getRequests() : 0;
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maximumKeys)
+                    .expireAfterAccess(limit.getPeriod())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rateLimit." + name);
+            this.limitedRequests = Counter.builder("auth.rate.limited")
+                    .tag("key", name)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Takes a token from the bucket of the key. The bucket holds its timestamp of being full, each request moves it
+         * one interval later and is rejected when that would put it more than a period ahead of now.
+         */
+        void acquire(String key) {
+            if (intervalNanos == 0) {
+                return;
+            }
+            AtomicLong fullAt = buckets.get(key, ignored -> new AtomicLong(Long.MIN_VALUE));
+            long now = System.nanoTime();
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long excess = next - now - periodNanos;
+                if (excess > 0) {
+                    limitedRequests.increment();
+                    throw new TooManyRequestsException("tooManyRequests", Duration.ofNanos(excess));
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.repository.TokenRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Digests of revoked access tokens, kept in memory until the tokens expire. Revocations are stored as
+ * {@link TokenType#REVOKED_ACCESS} tokens, so the set is rebuilt from the database at startup and picks up revocations
+ * made by other instances on every refresh, which loads just the revocations stored since the previous one.
+ * <p>
+ * Only the first 64 bits of each digest are kept, in open addressing tables of primitive longs. There is one table per
+ * minute of expiration, so a table is dropped as a whole once all of its tokens expired. Lookups take no lock unless
+ * they race with an insert.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final long BUCKET_SECONDS = 60;
+
+    /**
+     * Covers transactions which committed after the previous refresh but took their timestamp before it, and clock
+     * differences between instances. Loading a revocation once more only costs its lookup.
+     */
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private final TokenRepository tokenRepository;
+    private final ConcurrentSkipListMap<Long, LongSet> buckets = new ConcurrentSkipListMap<>();
+    private Instant lastRefresh;
+
+    public TokenRevocationService(TokenRepository tokenRepository, MeterRegistry meterRegistry) {
+        this.tokenRepository = tokenRepository;
+        Gauge.builder("tokens.revoked", this, TokenRevocationService::size).register(meterRegistry);
+        Gauge.builder("tokens.revoked.memory", this, TokenRevocationService::memoryUsage).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Drops expired revocations and loads the ones stored since the last refresh, all unexpired ones on the first.
+     */
+    @PostConstruct
+    public void refresh() {
+        refresh(Instant.now());
+    }
+
+    synchronized void refresh(Instant now) {
+        buckets.headMap(now.getEpochSecond(), true).clear();
+        List<TokenRepository.DigestAndExpiration> revokedTokens = lastRefresh == null
+                ? tokenRepository.findDigestsByTokenType(TokenType.REVOKED_ACCESS, now)
+                : tokenRepository.findDigestsByTokenTypeCreatedSince(TokenType.REVOKED_ACCESS, lastRefresh.minus(REFRESH_OVERLAP), now);
+        revokedTokens.forEach(token -> add(token.getDigest(), token.getExpiresAt()));
+        lastRefresh = now;
+    }
+
+    public void add(String digest, Instant expiresAt) {
+        long bucketEnd = Math.floorDiv(expiresAt.getEpochSecond(), BUCKET_SECONDS) * BUCKET_SECONDS + BUCKET_SECONDS;
+        buckets.computeIfAbsent(bucketEnd, key -> new LongSet()).add(toKey(digest));
+    }
+
+    public boolean isRevoked(String digest) {
+        if (buckets.isEmpty()) {
+            return false;
+        }
+        long key = toKey(digest);
+        for (LongSet bucket : buckets.values()) {
+            if (bucket.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long size() {
+        return buckets.values().stream().mapToLong(LongSet::size).sum();
+    }
+
+    private long memoryUsage() {
+        return buckets.values().stream().mapToLong(LongSet::memoryUsage).sum();
+    }
+
+    /**
+     * Digests are SHA-256, so their first 64 bits are uniformly distributed. Zero marks empty slots and is remapped.
+     */
+    private static long toKey(String digest) {
+        long key = ByteBuffer.wrap(Base64.getUrlDecoder().decode(digest)).getLong();
+        return key == 0 ? 1 : key;
+    }
+
+    private static final class LongSet {
+
+        private static final int ARRAY_OVERHEAD = 16;
+
+        private final StampedLock lock = new StampedLock();
+        private long[] table = new long[16];
+        private int size;
+
+        void add(long key) {
+            long stamp = lock.writeLock();
+            try {
+                if (contains(table, key)) {
+                    return;
+                }
+                if ((size + 1) * 2 > table.length) {
+                    long[] grown = new long[table.length * 2];
+                    for (long existing : table) {
+                        if (existing != 0) {
+                            insert(grown, existing);
+                        }
+                    }
+                    table = grown;
+                }
+                insert(table, key);
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean contains(long key) {
+            long stamp = lock.tryOptimisticRead();
+            boolean found = contains(table, key);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+            stamp = lock.readLock();
+            try {
+                return contains(table, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        long memoryUsage() {
+            return ARRAY_OVERHEAD + (long) table.length * Long.BYTES;
+        }
+
+        /**
+         * Tables are at most half full, so probing always reaches an empty slot, even on a table read during a resize.
+         */
+        private static boolean contains(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == key) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        private static void insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+        }
+    }
+}
@@ -2,80 +2,214 @@ package com.example.fullstacktemplate.service;
 
 import com.example.fullstacktemplate.config.AppProperties;
 import com.example.fullstacktemplate.model.JwtToken;
+import com.example.fullstacktemplate.model.ParsedToken;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenKey;
 import com.example.fullstacktemplate.model.TokenType;
 import com.example.fullstacktemplate.model.User;
 import com.example.fullstacktemplate.repository.TokenRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.*;
-import javax.crypto.spec.IvParameterSpec;
 import javax.transaction.Transactional;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class TokenService {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenService.class);
+    private static final String ISSUER = "Full-stack template";
+    static final String TOKEN_TYPE_CLAIM = "tokenType";
+    static final String USER_CLAIM = "user";
+    static final String TOKEN_VERSION_CLAIM = "tokenVersion";
+    static final String ROLE_CLAIM = "role";
+    static final String EMAIL_CLAIM = "email";
+    static final String NAME_CLAIM = "name";
+    /**
+     * Header naming the cipher of the encrypted claims, so tokens stay readable when the configured cipher changes.
+     */
+    static final String SUBJECT_ENCRYPTION_HEADER = "sea";
+    private static final TypeReference<Map<String, String>> USER_CLAIM_TYPE = new TypeReference<>() {
+    };
 
     private final AppProperties appProperties;
     private final TokenRepository tokenRepository;
     private final CryptoService cryptoService;
-    private final SecretKey secretKey;
+    private final KeyRingService keyRingService;
+    private final TokenVersionService tokenVersionService;
+    private final TokenRevocationService tokenRevocationService;
+    private final ObjectMapper objectMapper;
     private final String algorithm;
-    private final IvParameterSpec ivParameterSpec;
+    private final SignatureAlgorithm signatureAlgorithm;
+    private final SigningKeyResolver signingKeyResolver;
+    private final CompactJwtVerifier compactJwtVerifier;
+    private final Cache<String, ParsedToken> accessTokenCache;
+    private final Cache<String, Boolean> missingTokenCache;
 
-    public TokenService(AppProperties appProperties, TokenRepository tokenRepository, CryptoService cryptoService) throws NoSuchAlgorithmException {
+    public TokenService(AppProperties appProperties, TokenRepository tokenRepository, CryptoService cryptoService, KeyRingService keyRingService, TokenVersionService tokenVersionService, TokenRevocationService tokenRevocationService, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
         this.appProperties = appProperties;
         this.tokenRepository = tokenRepository;
         this.cryptoService = cryptoService;
-        this.algorithm = "AES/CBC/PKCS5Padding";
-        this.ivParameterSpec = cryptoService.generateInitializationVector();
-        this.secretKey = cryptoService.generateKey(256);
+        this.keyRingService = keyRingService;
+        this.tokenVersionService = tokenVersionService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.objectMapper = objectMapper;
+        this.algorithm = appProperties.getAuth().getSubjectEncryptionAlgorithm();
+        if (!CryptoService.AES_CBC.equals(algorithm) && !CryptoService.AES_GCM.equals(algorithm)) {
+            throw new IllegalArgumentException(String.format("Unsupported subject encryption algorithm %s", algorithm));
+        }
+        this.signatureAlgorithm = SignatureAlgorithm.forName(appProperties.getAuth().getSignatureAlgorithm());
+        if (signatureAlgorithm != SignatureAlgorithm.HS512 && signatureAlgorithm != SignatureAlgorithm.RS256) {
+            throw new IllegalArgumentException(String.format("Unsupported signature algorithm %s", signatureAlgorithm));
+        }
+        this.signingKeyResolver = new SigningKeyResolverAdapter() {
+            @Override
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                return getVerificationKey(header);
+            }
+        };
+        this.compactJwtVerifier = new CompactJwtVerifier(keyRingService::findKey);
+        this.accessTokenCache = Caffeine.newBuilder()
+                .maximumSize(appProperties.getAuth().getAccessTokenCacheSize())
+                .expireAfter(new ParsedTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, accessTokenCache, "accessToken");
+        this.missingTokenCache = Caffeine.newBuilder()
+                .maximumSize(appProperties.getAuth().getMissingTokenCacheSize())
+                .expireAfterWrite(appProperties.getAuth().getMissingTokenCacheExpiration())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, missingTokenCache, "missingToken");
     }
 
-    public String createJwtTokenValue(Long id, Duration expireIn) {
-        return createJwtTokenValue(Long.toString(id), expireIn);
+    /**
+     * Creates an access token. In stateless authentication mode the token also carries email, name and role of the
+     * user, so requests can be authenticated without loading the user. HS512 tokens carry them encrypted like the
+     * subject.
+     */
+    public String createAccessTokenValue(User user, Duration expireIn) {
+        Instant now = Instant.now();
+        return createJwtTokenValue(user, now, now.plus(expireIn), TokenType.ACCESS, appProperties.getAuth().isStatelessAuthentication());
     }
 
-    private String createJwtTokenValue(String subject, Duration expireIn) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + expireIn.toMillis());
+    /**
+     * Tokens signed with HS512 can only be verified by this service, so their subject and user details are encrypted.
+     * RS256 tokens are meant to be read by other services, which verify them with the keys from the JWKS endpoint, so
+     * they carry the user id as plain subject, and access tokens the role of the user as well.
+     */
+    private String createJwtTokenValue(User user, Instant issuedAt, Instant expiresAt, TokenType tokenType, boolean userDetails) {
+        TokenKey tokenKey = keyRingService.getSigningKey();
+        SignatureAlgorithm tokenSignatureAlgorithm = getSignatureAlgorithm(tokenKey);
         try {
-            return Jwts.builder()
-                    .setSubject(cryptoService.encrypt(algorithm, subject, secretKey, ivParameterSpec))
-                    .setIssuedAt(new Date())
-                    .setExpiration(expiryDate)
-                    .setIssuer("Full-stack template")
-                    .signWith(SignatureAlgorithm.HS512, appProperties.getAuth().getTokenSecret())
+            JwtBuilder builder = Jwts.builder()
+                    .setHeaderParam(JwsHeader.KEY_ID, tokenKey.getKid())
+                    .setId(UUID.randomUUID().toString())
+                    .setIssuedAt(Date.from(issuedAt))
+                    .setExpiration(Date.from(expiresAt))
+                    .setIssuer(ISSUER)
+                    .claim(TOKEN_TYPE_CLAIM, tokenType.name())
+                    .claim(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+            if (tokenSignatureAlgorithm == SignatureAlgorithm.RS256) {
+                builder.setSubject(Long.toString(user.getId()));
+                if (tokenType == TokenType.ACCESS) {
+                    builder.claim(ROLE_CLAIM, user.getRole().name());
+                }
+                if (userDetails) {
+                    builder.claim(EMAIL_CLAIM, user.getEmail())
+                            .claim(NAME_CLAIM, user.getName());
+                }
+            } else {
+                builder.setHeaderParam(SUBJECT_ENCRYPTION_HEADER, algorithm)
+                        .setSubject(encryptSubject(Long.toString(user.getId()), tokenKey));
+                if (userDetails) {
+                    Map<String, String> userClaim = new HashMap<>();
+                    userClaim.put(EMAIL_CLAIM, user.getEmail());
+                    userClaim.put(NAME_CLAIM, user.getName());
+                    userClaim.put(ROLE_CLAIM, user.getRole().name());
+                    builder.claim(USER_CLAIM, encryptSubject(objectMapper.writeValueAsString(userClaim), tokenKey));
+                }
+            }
+            return builder
+                    .signWith(tokenSignatureAlgorithm, getSigningKey(tokenKey))
                     .compact();
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException e) {
+        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | JsonProcessingException e) {
             throw new IllegalStateException("Error while creating jwt token");
         }
     }
 
-    public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(appProperties.getAuth().getTokenSecret())
-                .parseClaimsJws(token)
-                .getBody();
-        try {
-            return Long.parseLong(cryptoService.decrypt(algorithm, claims.getSubject(), secretKey, ivParameterSpec));
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException e) {
-            throw new IllegalStateException("Error while getting id from token");
+    /**
+     * Verifies signature and expiration of the token and decodes its content in a single pass. The token is verified
+     * and, when signed with HS512, decrypted with the key named by its {@code kid} header. HS512 tokens are verified by
+     * {@link CompactJwtVerifier}, other tokens by jjwt. Tokens without subject, token type or expiration are rejected.
+     *
+     * @return parsed token or empty optional when the token is not valid
+     */
+    public Optional<ParsedToken> parseJwtToken(String jwtToken) {
+        if (jwtToken == null || jwtToken.isEmpty()) {
+            logger.error("JWT claims string is empty.");
+            return Optional.empty();
         }
-    }
-
-    public boolean validateJwtToken(String jwtToken) {
         try {
-            Jwts.parser().setSigningKey(appProperties.getAuth().getTokenSecret()).parseClaimsJws(jwtToken);
-            return true;
+            CompactJwtVerifier.VerifiedClaims claims = compactJwtVerifier.verify(jwtToken);
+            if (claims == null) {
+                claims = parseWithJjwt(jwtToken);
+            }
+            if (claims.getSubject() == null || claims.getTokenType() == null || claims.getExpiration() == null) {
+                logger.error("JWT claims are incomplete.");
+                return Optional.empty();
+            }
+            TokenKey tokenKey = claims.getTokenKey();
+            Long userId = Long.parseLong(claims.isEncrypted() ? decryptSubject(claims.getSubject(), tokenKey, claims.getSubjectEncryption()) : claims.getSubject());
+            TokenType tokenType = TokenType.valueOf(claims.getTokenType());
+            Date expiration = new Date(claims.getExpiration());
+            Map<String, String> userClaim = null;
+            if (!claims.isEncrypted() && claims.getEmail() != null) {
+                userClaim = new HashMap<>();
+                userClaim.put(EMAIL_CLAIM, claims.getEmail());
+                userClaim.put(NAME_CLAIM, claims.getName());
+                userClaim.put(ROLE_CLAIM, claims.getRole());
+            } else if (claims.isEncrypted() && claims.getUser() != null) {
+                userClaim = Objects.requireNonNullElse(objectMapper.readValue(decryptSubject(claims.getUser(), tokenKey, claims.getSubjectEncryption()), USER_CLAIM_TYPE), Map.of());
+            }
+            if (userClaim == null) {
+                return Optional.of(new ParsedToken(userId, expiration, claims.getIssuer(), tokenType, claims.getTokenVersion()));
+            }
+            if (userClaim.get(ROLE_CLAIM) == null) {
+                logger.error("JWT user claim is incomplete.");
+                return Optional.empty();
+            }
+            return Optional.of(new ParsedToken(userId, expiration, claims.getIssuer(), tokenType, claims.getTokenVersion(),
+                    userClaim.get(EMAIL_CLAIM), userClaim.get(NAME_CLAIM), Role.valueOf(userClaim.get(ROLE_CLAIM))));
         } catch (SignatureException ex) {
             logger.error("Invalid JWT signature");
         } catch (MalformedJwtException ex) {
@@ -84,24 +218,246 @@ public class TokenService {
             logger.error("Expired JWT token");
         } catch (UnsupportedJwtException ex) {
             logger.error("Unsupported JWT token");
+        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | JsonProcessingException ex) {
+            logger.error("Invalid JWT subject");
         } catch (IllegalArgumentException ex) {
-            logger.error("JWT claims string is empty.");
+            logger.error("Invalid JWT claims.");
         }
-        return false;
+        return Optional.empty();
     }
 
+    private CompactJwtVerifier.VerifiedClaims parseWithJjwt(String jwtToken) {
+        Jws<Claims> jws = Jwts.parser()
+                .setSigningKeyResolver(signingKeyResolver)
+                .parseClaimsJws(jwtToken);
+        boolean encrypted = !SignatureAlgorithm.RS256.getValue().equals(jws.getHeader().getAlgorithm());
+        Object subjectEncryption = jws.getHeader().get(SUBJECT_ENCRYPTION_HEADER);
+        return CompactJwtVerifier.VerifiedClaims.of(getKey(jws.getHeader()), jws.getBody(), encrypted, subjectEncryption instanceof String ? (String) subjectEncryption : null);
+    }
+
+    public Optional<ParsedToken> parseJwtToken(String jwtToken, TokenType tokenType) {
+        return parseJwtToken(jwtToken).filter(parsedToken -> parsedToken.isOfType(tokenType));
+    }
+
+    /**
+     * Same as {@link #parseJwtToken(String, TokenType)} with {@link TokenType#ACCESS}, but verified tokens are cached
+     * under digest of their value until they expire, so repeated requests with the same token skip the verification.
+     * Revoked tokens and tokens issued before the last change of the user's token version are rejected, cached or not.
+     */
+    public Optional<ParsedToken> parseAccessToken(String jwtToken) {
+        String key = cryptoService.hash(jwtToken);
+        if (tokenRevocationService.isRevoked(key)) {
+            return Optional.empty();
+        }
+        ParsedToken cachedToken = accessTokenCache.getIfPresent(key);
+        Optional<ParsedToken> parsedToken;
+        if (cachedToken != null) {
+            parsedToken = Optional.of(cachedToken);
+        } else {
+            parsedToken = parseJwtToken(jwtToken, TokenType.ACCESS);
+            parsedToken.ifPresent(token -> accessTokenCache.put(key, token));
+        }
+        return parsedToken.filter(this::hasCurrentTokenVersion);
+    }
+
+    private boolean hasCurrentTokenVersion(ParsedToken parsedToken) {
+        return tokenVersionService.findTokenVersion(parsedToken.getUserId())
+                .filter(tokenVersion -> tokenVersion == parsedToken.getTokenVersion())
+                .isPresent();
+    }
+
+    /**
+     * Revokes the access token of the user until it expires. Tokens which are not valid anymore are ignored.
+     */
+    @Transactional
+    public void revokeAccessToken(String value, User user) {
+        Optional<ParsedToken> accessToken = parseAccessToken(value)
+                .filter(parsedToken -> parsedToken.getUserId().equals(user.getId()));
+        if (accessToken.isEmpty()) {
+            return;
+        }
+        JwtToken revokedToken = new JwtToken();
+        revokedToken.setDigest(cryptoService.hash(value));
+        revokedToken.setUser(user);
+        revokedToken.setTokenType(TokenType.REVOKED_ACCESS);
+        revokedToken.setExpiresAt(accessToken.get().getExpiration().toInstant());
+        tokenRepository.save(revokedToken);
+        tokenRevocationService.add(revokedToken.getDigest(), revokedToken.getExpiresAt());
+        accessTokenCache.invalidate(revokedToken.getDigest());
+    }
 
     @Transactional
     public JwtToken createToken(User user, Duration expireIn, TokenType tokenType) {
-        String tokenValue = createJwtTokenValue(user.getId(), expireIn);
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(expireIn);
+        JwtToken jwtToken = new JwtToken();
+        jwtToken.setValue(createJwtTokenValue(user, now, expiresAt, tokenType, false));
+        jwtToken.setDigest(cryptoService.hash(jwtToken.getValue()));
+        jwtToken.setUser(user);
+        jwtToken.setTokenType(tokenType);
+        jwtToken.setExpiresAt(expiresAt);
+        missingTokenCache.invalidate(getMissingTokenKey(jwtToken.getDigest(), tokenType));
+        return tokenRepository.save(jwtToken);
+    }
+
+    /**
+     * Creates a random token which carries no data and is valid only as long as its stored digest exists and has not
+     * expired, so checking it needs neither signature verification nor decryption.
+     */
+    public JwtToken createOpaqueToken(User user, Duration expireIn, TokenType tokenType) {
         JwtToken jwtToken = new JwtToken();
-        jwtToken.setValue(tokenValue);
+        jwtToken.setValue(cryptoService.generateOpaqueToken());
+        jwtToken.setDigest(cryptoService.hash(jwtToken.getValue()));
         jwtToken.setUser(user);
         jwtToken.setTokenType(tokenType);
+        jwtToken.setExpiresAt(Instant.now().plus(expireIn));
+        missingTokenCache.invalidate(getMissingTokenKey(jwtToken.getDigest(), tokenType));
         return tokenRepository.save(jwtToken);
     }
 
+    /**
+     * Digests which were not found are remembered for a short time, so stale cookies and dead links sent again and
+     * again do not reach the database. Creating a token removes its digest from the remembered ones.
+     */
+    public Optional<JwtToken> findToken(String value, TokenType tokenType) {
+        String digest = cryptoService.hash(value);
+        String missingTokenKey = getMissingTokenKey(digest, tokenType);
+        if (missingTokenCache.getIfPresent(missingTokenKey) != null) {
+            return Optional.empty();
+        }
+        Optional<JwtToken> jwtToken = tokenRepository.findByDigestAndTokenType(digest, tokenType);
+        if (jwtToken.isEmpty()) {
+            missingTokenCache.put(missingTokenKey, Boolean.TRUE);
+        }
+        return jwtToken;
+    }
+
+    /**
+     * Finds a stored token which has not expired yet. The stored row is the source of truth, so this works the same for
+     * opaque tokens and JWTs.
+     */
+    public Optional<JwtToken> findValidToken(String value, TokenType tokenType) {
+        return findToken(value, tokenType)
+                .filter(jwtToken -> jwtToken.getExpiresAt().isAfter(Instant.now()));
+    }
+
+    /**
+     * Same as {@link #findValidToken(String, TokenType)} for many values at once, resolved with a single query.
+     *
+     * @return valid tokens by their value, values without a valid token are missing
+     */
+    public Map<String, JwtToken> findValidTokens(Collection<String> values, TokenType tokenType) {
+        Map<String, String> valuesByDigest = values.stream()
+                .distinct()
+                .collect(Collectors.toMap(cryptoService::hash, Function.identity()));
+        valuesByDigest.keySet().removeIf(digest -> missingTokenCache.getIfPresent(getMissingTokenKey(digest, tokenType)) != null);
+        if (valuesByDigest.isEmpty()) {
+            return Map.of();
+        }
+        List<JwtToken> jwtTokens = tokenRepository.findByDigestInAndTokenType(valuesByDigest.keySet(), tokenType);
+        Set<String> foundDigests = jwtTokens.stream().map(JwtToken::getDigest).collect(Collectors.toSet());
+        valuesByDigest.keySet().stream()
+                .filter(digest -> !foundDigests.contains(digest))
+                .forEach(digest -> missingTokenCache.put(getMissingTokenKey(digest, tokenType), Boolean.TRUE));
+        Instant now = Instant.now();
+        return jwtTokens.stream()
+                .filter(jwtToken -> jwtToken.getExpiresAt().isAfter(now))
+                .collect(Collectors.toMap(jwtToken -> valuesByDigest.get(jwtToken.getDigest()), Function.identity()));
+    }
+
+    /**
+     * Deletes at most {@code batchSize} tokens which expired before {@code now}, so every call stays bounded in memory
+     * and in the time it holds locks.
+     *
+     * @return number of deleted tokens
+     */
+    @Transactional
+    public int deleteExpiredTokens(Instant now, int batchSize) {
+        List<Long> expiredIds = tokenRepository.findExpiredIds(now, PageRequest.of(0, batchSize));
+        if (expiredIds.isEmpty()) {
+            return 0;
+        }
+        return tokenRepository.deleteByIds(expiredIds);
+    }
+
     public void delete(JwtToken jwtToken) {
         tokenRepository.delete(jwtToken);
     }
+
+    private static String getMissingTokenKey(String digest, TokenType tokenType) {
+        return tokenType.name() + ':' + digest;
+    }
+
+    private TokenKey getKey(JwsHeader<?> header) {
+        return keyRingService.findKey(header.getKeyId())
+                .orElseThrow(() -> new SignatureException(String.format("Unknown key %s", header.getKeyId())));
+    }
+
+    /**
+     * Keys created before switching to {@code RS256} have no key pair, so tokens are signed with HS512 until the first
+     * key with a key pair becomes active.
+     */
+    private SignatureAlgorithm getSignatureAlgorithm(TokenKey tokenKey) {
+        return signatureAlgorithm == SignatureAlgorithm.RS256 && tokenKey.getKeyPair() != null ? SignatureAlgorithm.RS256 : SignatureAlgorithm.HS512;
+    }
+
+    private Key getSigningKey(TokenKey tokenKey) {
+        return getSignatureAlgorithm(tokenKey) == SignatureAlgorithm.RS256 ? tokenKey.getKeyPair().getPrivate() : tokenKey.getSigningKey();
+    }
+
+    /**
+     * The key is picked by the algorithm in the header, but only keys of that algorithm's own type are ever returned,
+     * so a token cannot get an HMAC signature checked against a public key.
+     */
+    private Key getVerificationKey(JwsHeader<?> header) {
+        TokenKey tokenKey = getKey(header);
+        SignatureAlgorithm headerAlgorithm = SignatureAlgorithm.forName(header.getAlgorithm());
+        if (headerAlgorithm == SignatureAlgorithm.HS512) {
+            return tokenKey.getSigningKey();
+        }
+        if (headerAlgorithm == SignatureAlgorithm.RS256 && tokenKey.getKeyPair() != null) {
+            return tokenKey.getKeyPair().getPublic();
+        }
+        throw new SignatureException(String.format("Unsupported signature algorithm %s", headerAlgorithm));
+    }
+
+    private String encryptSubject(String subject, TokenKey tokenKey) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        if (CryptoService.AES_GCM.equals(algorithm)) {
+            return cryptoService.encrypt(subject, tokenKey.getEncryptionKey());
+        }
+        return cryptoService.encrypt(algorithm, subject, tokenKey.getEncryptionKey(), tokenKey.getInitializationVector());
+    }
+
+    /**
+     * Decrypts with the cipher named by the token, tokens issued before the cipher was recorded with the configured one.
+     */
+    private String decryptSubject(String encryptedSubject, TokenKey tokenKey, String subjectEncryption) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        String tokenAlgorithm = subjectEncryption == null ? algorithm : subjectEncryption;
+        if (CryptoService.AES_GCM.equals(tokenAlgorithm)) {
+            return cryptoService.decrypt(encryptedSubject, tokenKey.getEncryptionKey());
+        }
+        if (CryptoService.AES_CBC.equals(tokenAlgorithm)) {
+            return cryptoService.decrypt(tokenAlgorithm, encryptedSubject, tokenKey.getEncryptionKey(), tokenKey.getInitializationVector());
+        }
+        throw new NoSuchAlgorithmException(String.format("Unsupported subject encryption algorithm %s", tokenAlgorithm));
+    }
+
+    private static class ParsedTokenExpiry implements Expiry<String, ParsedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, ParsedToken parsedToken, long currentTime) {
+            long remainingMillis = parsedToken.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, ParsedToken parsedToken, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, parsedToken, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, ParsedToken parsedToken, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.repository.UserRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Token versions of users, kept in the {@code tokenVersion} cache. Every jwt token carries the version of its user
+ * from the time it was issued, so incrementing the version revokes all access tokens of the user at once.
+ * Updates of the cache are applied when the surrounding transaction commits.
+ * <p>
+ * Increments made by other instances are picked up on every {@link #refresh()}, which evicts the versions of users
+ * updated since the previous one. Users deleted elsewhere are not seen by the refresh, their versions stay cached
+ * until the cache entry expires.
+ */
+@Service
+public class TokenVersionService {
+
+    private static final String CACHE_NAME = "tokenVersion";
+
+    /**
+     * Covers transactions which committed after the previous refresh but took their timestamp before it, and clock
+     * differences between instances. Evicting a version once more only costs another lookup.
+     */
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private final UserRepository userRepository;
+    private final CacheManager cacheManager;
+    private volatile Instant lastRefresh = Instant.now();
+
+    public TokenVersionService(UserRepository userRepository, CacheManager cacheManager) {
+        this.userRepository = userRepository;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * @return current token version or empty optional when the user does not exist
+     */
+    @Cacheable(cacheNames = CACHE_NAME, key = "#userId")
+    public Optional<Integer> findTokenVersion(Long userId) {
+        return userRepository.findTokenVersionById(userId);
+    }
+
+    @CachePut(cacheNames = CACHE_NAME, key = "#userId")
+    public Optional<Integer> updateTokenVersion(Long userId, Integer tokenVersion) {
+        return Optional.of(tokenVersion);
+    }
+
+    @CacheEvict(cacheNames = CACHE_NAME, key = "#userId")
+    public void evictTokenVersion(Long userId) {
+    }
+
+    /**
+     * Evicts the versions of users whose version changed since the last refresh, including changes of this instance.
+     */
+    public void refresh() {
+        Instant now = Instant.now();
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache != null) {
+            userRepository.findIdsByTokenVersionUpdatedAtSince(lastRefresh.minus(REFRESH_OVERLAP)).forEach(cache::evict);
+        }
+        lastRefresh = now;
+    }
+}
@@ -21,16 +21,18 @@ import dev.samstevens.totp.time.TimeProvider;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.utils.URIBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
@@ -41,6 +43,8 @@ import java.util.stream.Collectors;
 @Transactional
 @Slf4j
 public class UserService {
+    private static final String DEFAULT_PROFILE_IMAGE_NAME = "blank-profile-picture.png";
+
     private final PasswordEncoder passwordEncoder;
     private final FileDbService fileDbService;
     private final SecretGenerator twoFactorSecretGenerator;
@@ -53,9 +57,12 @@ public class UserService {
     private final UserMapper userMapper;
     private final TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository;
     private final MessageService messageService;
+    private final TokenVersionService tokenVersionService;
+    private final ImageVariantService imageVariantService;
+    private byte[] defaultProfileImage;
 
     @Autowired
-    public UserService(PasswordEncoder passwordEncoder, FileDbService fileDbService, SecretGenerator twoFactorSecretGenerator, AppProperties appProperties, TokenService tokenService, TokenRepository tokenRepository, ResourceLoader resourceLoader, UserRepository userRepository, EmailService emailService, UserMapper userMapper, TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository, MessageService messageService) {
+    public UserService(PasswordEncoder passwordEncoder, FileDbService fileDbService, SecretGenerator twoFactorSecretGenerator, AppProperties appProperties, TokenService tokenService, TokenRepository tokenRepository, ResourceLoader resourceLoader, UserRepository userRepository, EmailService emailService, UserMapper userMapper, TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository, MessageService messageService, TokenVersionService tokenVersionService, ImageVariantService imageVariantService) {
         this.passwordEncoder = passwordEncoder;
         this.fileDbService = fileDbService;
         this.twoFactorSecretGenerator = twoFactorSecretGenerator;
@@ -68,6 +75,19 @@ public class UserService {
         this.userMapper = userMapper;
         this.twoFactoryRecoveryCodeRepository = twoFactoryRecoveryCodeRepository;
         this.messageService = messageService;
+        this.tokenVersionService = tokenVersionService;
+        this.imageVariantService = imageVariantService;
+    }
+
+    @PostConstruct
+    public void loadDefaultProfileImage() throws IOException {
+        try (InputStream inputStream = resourceLoader.getResource("classpath:images/" + DEFAULT_PROFILE_IMAGE_NAME).getInputStream()) {
+            defaultProfileImage = inputStream.readAllBytes();
+        }
+    }
+
+    public FileDb saveDefaultProfileImage() {
+        return fileDbService.save(DEFAULT_PROFILE_IMAGE_NAME, FileType.IMAGE_PNG, defaultProfileImage);
     }
 
     public User createNewUser(SignUpRequestDto signUpRequestDto) throws IOException, URISyntaxException {
@@ -87,7 +107,7 @@ public class UserService {
         user.setPassword(passwordEncoder.encode(signUpRequestDto.getPassword()));
         user.setTwoFactorEnabled(false);
         user.setRole(Role.USER);
-        user.setProfileImage(fileDbService.save("blank-profile-picture.png", FileType.IMAGE_PNG, resourceLoader.getResource("classpath:images\\blank-profile-picture.png").getInputStream().readAllBytes()));
+        user.setProfileImage(saveDefaultProfileImage());
         user = userRepository.save(user);
         JwtToken jwtToken = tokenService.createToken(user, Duration.of(appProperties.getAuth().getVerificationTokenExpirationMsec(), ChronoUnit.MILLIS), TokenType.ACCOUNT_ACTIVATION);
         URIBuilder uriBuilder = new URIBuilder(appProperties.getAccountActivationUri())
@@ -101,10 +121,10 @@ public class UserService {
 
     public User updateUserPassword(User user, String newPassword) {
         user.setPassword(passwordEncoder.encode(newPassword));
+        revokeTokens(user);
         return userRepository.save(user);
     }
 
-    @Cacheable(cacheNames = "user", key = "#id")
     public Optional<User> findById(Long id) {
         return userRepository.findById(id);
     }
@@ -114,12 +134,20 @@ public class UserService {
     }
 
     public void cancelUserAccount(Long userId) {
-        userRepository.deleteById(userId);
+        User user = userRepository.findById(userId).orElseThrow(() -> new BadRequestException("userNotFound"));
+        Long profileImageId = user.getProfileImageId();
+        userRepository.delete(user);
+        userRepository.flush();
+        if (profileImageId != null) {
+            fileDbService.release(profileImageId);
+        }
+        tokenVersionService.evictTokenVersion(userId);
     }
 
     public User updatePassword(User user, ChangePasswordDto changePasswordDto) {
         if (passwordEncoder.matches(changePasswordDto.getCurrentPassword(), user.getPassword())) {
             user.setPassword(passwordEncoder.encode(changePasswordDto.getNewPassword()));
+            revokeTokens(user);
             return userRepository.save(user);
         } else {
             throw new UnauthorizedRequestException();
@@ -127,10 +155,10 @@ public class UserService {
     }
 
     public User activateUserAccount(TokenAccessRequestDto tokenAccessRequestDto) {
-        Optional<JwtToken> optionalVerificationToken = tokenRepository.findByValueAndTokenType(tokenAccessRequestDto.getToken(), TokenType.ACCOUNT_ACTIVATION);
+        Optional<JwtToken> optionalVerificationToken = tokenService.findToken(tokenAccessRequestDto.getToken(), TokenType.ACCOUNT_ACTIVATION);
         if (optionalVerificationToken.isPresent()) {
             User user = optionalVerificationToken.get().getUser();
-            if (!tokenService.validateJwtToken(tokenAccessRequestDto.getToken())) {
+            if (tokenService.parseJwtToken(tokenAccessRequestDto.getToken(), TokenType.ACCOUNT_ACTIVATION).isEmpty()) {
                 throw new BadRequestException("tokenExpired");
             } else {
                 user.setEmailVerified(true);
@@ -145,7 +173,8 @@ public class UserService {
     public User disableTwoFactorAuthentication(User user) {
         user.setTwoFactorSecret(null);
         user.setTwoFactorEnabled(false);
-        user.getTwoFactorRecoveryCodes().clear();
+        twoFactoryRecoveryCodeRepository.deleteByUserId(user.getId());
+        revokeTokens(user);
         return userRepository.save(user);
     }
 
@@ -155,10 +184,10 @@ public class UserService {
     }
 
     public User activateRequestedEmail(TokenAccessRequestDto tokenAccessRequestDto) {
-        Optional<JwtToken> optionalVerificationToken = tokenRepository.findByValueAndTokenType(tokenAccessRequestDto.getToken(), TokenType.EMAIL_UPDATE);
+        Optional<JwtToken> optionalVerificationToken = tokenService.findToken(tokenAccessRequestDto.getToken(), TokenType.EMAIL_UPDATE);
         if (optionalVerificationToken.isPresent()) {
             User user = optionalVerificationToken.get().getUser();
-            if (!tokenService.validateJwtToken(tokenAccessRequestDto.getToken())) {
+            if (tokenService.parseJwtToken(tokenAccessRequestDto.getToken(), TokenType.EMAIL_UPDATE).isEmpty()) {
                 throw new BadRequestException("tokenExpired");
             } else {
                 user.setEmail(user.getRequestedNewEmail());
@@ -191,7 +220,25 @@ public class UserService {
                     messageService.getMessage("confirmAccountEmailChangeEmailBody", new Object[]{oldEmail, newEmail, uriBuilder.build().toURL().toString()})
             );
         }
-        return userRepository.save(userMapper.toEntity(currentUserId,newUser));
+        User updatedUser = userMapper.toEntity(currentUserId, newUser);
+        FileDbDto profileImage = newUser.getProfileImage();
+        if (profileImage == null) {
+            return userRepository.save(updatedUser);
+        }
+        FileType fileType = FileType.fromMimeType(profileImage.getType()).orElseThrow(() -> new BadRequestException("profileImage.invalidMessage"));
+        Long oldProfileImageId = updatedUser.getProfileImageId();
+        byte[] profileImageData;
+        try {
+            profileImageData = imageVariantService.stripMetadata(profileImage.getData(), fileType);
+        } catch (IOException e) {
+            throw new BadRequestException("profileImage.invalidMessage");
+        }
+        updatedUser.setProfileImage(fileDbService.save(profileImage.getName(), fileType, profileImageData));
+        updatedUser = userRepository.saveAndFlush(updatedUser);
+        if (oldProfileImageId != null) {
+            fileDbService.release(oldProfileImageId);
+        }
+        return updatedUser;
     }
 
     public User setNewTwoFactorSecret(User user){
@@ -218,10 +265,13 @@ public class UserService {
     }
 
     public void resetPassword(User user, PasswordResetRequestDto passwordResetRequestDto) {
-        Optional<JwtToken> forgottenPasswordToken = tokenRepository.findByUserAndTokenType(user, TokenType.FORGOTTEN_PASSWORD);
-        if (forgottenPasswordToken.isEmpty() || !forgottenPasswordToken.get().getValue().equals(passwordResetRequestDto.getToken())) {
+        Optional<JwtToken> forgottenPasswordToken = tokenService.findToken(passwordResetRequestDto.getToken(), TokenType.FORGOTTEN_PASSWORD)
+                .filter(jwtToken -> jwtToken.getUser().getId().equals(user.getId()));
+        if (forgottenPasswordToken.isEmpty()) {
             throw new BadRequestException("invalidToken");
-        } else if (!tokenService.validateJwtToken(passwordResetRequestDto.getToken())) {
+        } else if (tokenService.parseJwtToken(passwordResetRequestDto.getToken(), TokenType.FORGOTTEN_PASSWORD)
+                .filter(parsedToken -> parsedToken.getUserId().equals(user.getId()))
+                .isEmpty()) {
             throw new BadRequestException("tokenExpired");
         } else {
             updateUserPassword(user, passwordResetRequestDto.getPassword());
@@ -279,4 +329,15 @@ public class UserService {
     public boolean isEmailUsed(String email) {
         return userRepository.existsByEmail(email);
     }
+
+    /**
+     * Logs the user out everywhere. Access tokens are revoked by incrementing the token version they carry, refresh
+     * tokens are deleted, so they cannot be used to get new access tokens. Callers save the user.
+     */
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        user.setTokenVersionUpdatedAt(Instant.now());
+        tokenRepository.deleteByUserIdAndTokenType(user.getId(), TokenType.REFRESH);
+        tokenVersionService.updateTokenVersion(user.getId(), user.getTokenVersion());
+    }
 }
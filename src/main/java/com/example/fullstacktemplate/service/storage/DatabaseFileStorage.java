@@ -0,0 +1,36 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps the content as a blob in the file table.
+ */
+@Component
+public class DatabaseFileStorage implements FileStorage {
+
+    @Override
+    public FileStorageType getType() {
+        return FileStorageType.DATABASE;
+    }
+
+    @Override
+    public void store(FileDb fileDb, byte[] data) {
+        fileDb.setData(data);
+        fileDb.setStorageType(FileStorageType.DATABASE);
+    }
+
+    @Override
+    public byte[] read(StoredFile storedFile) {
+        return storedFile.copyData();
+    }
+
+    @Override
+    public void transferTo(StoredFile storedFile, OutputStream outputStream) throws IOException {
+        storedFile.writeData(outputStream);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Backend keeping the content of {@link FileDb}. Metadata always stays in the file table; every row remembers in which
+ * storage its content lives, so several storages can be used side by side.
+ */
+public interface FileStorage {
+
+    FileStorageType getType();
+
+    /**
+     * Stores the content for the given file. Content hash and size of the file are already set.
+     */
+    void store(FileDb fileDb, byte[] data) throws IOException;
+
+    byte[] read(StoredFile storedFile) throws IOException;
+
+    void transferTo(StoredFile storedFile, OutputStream outputStream) throws IOException;
+
+    /**
+     * Deletes content which no file references any more and which was neither stored nor reused within the grace
+     * period. Storages keeping the content in the file row lose it together with the row and have nothing to delete.
+     *
+     * @param findReferencedContentHashes returns those of the given content hashes which are referenced by a file
+     * @return number of deleted contents
+     */
+    default long deleteUnreferencedContent(Function<Collection<String>, Collection<String>> findReferencedContentHashes, Duration gracePeriod) throws IOException {
+        return 0;
+    }
+}
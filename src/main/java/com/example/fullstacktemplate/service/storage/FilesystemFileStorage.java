@@ -0,0 +1,168 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the content in a local directory under its content hash, so identical content is written only once.
+ * Content is served with {@link FileChannel#transferTo} and never materialized on the heap.
+ * <p>
+ * Several files may share one content, and a file being saved may reuse content which the last file referencing it is
+ * just releasing. Content is therefore never deleted together with a file, but by
+ * {@link #deleteUnreferencedContent(Function, Duration)} in the background. Storing content which already exists
+ * touches its modification time, and content touched within the grace period is kept, so content reused by a save
+ * which has not committed yet survives as long as that transaction is shorter than the grace period.
+ */
+@Component
+public class FilesystemFileStorage implements FileStorage {
+
+    private static final int DELETE_BATCH_SIZE = 500;
+    private static final String DELETED_SUFFIX = ".deleted";
+
+    private final Path directory;
+
+    public FilesystemFileStorage(AppProperties appProperties) {
+        this.directory = Paths.get(appProperties.getFileStorage().getDirectory()).toAbsolutePath();
+    }
+
+    @Override
+    public FileStorageType getType() {
+        return FileStorageType.FILESYSTEM;
+    }
+
+    @Override
+    public void store(FileDb fileDb, byte[] data) throws IOException {
+        Path path = resolve(fileDb.getContentHash());
+        if (!touch(path)) {
+            Files.createDirectories(path.getParent());
+            Path temporaryFile = Files.createTempFile(path.getParent(), fileDb.getContentHash(), ".tmp");
+            try {
+                Files.write(temporaryFile, data);
+                Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+        fileDb.setData(null);
+        fileDb.setStorageType(FileStorageType.FILESYSTEM);
+    }
+
+    @Override
+    public byte[] read(StoredFile storedFile) throws IOException {
+        return Files.readAllBytes(resolve(storedFile.getContentHash()));
+    }
+
+    @Override
+    public void transferTo(StoredFile storedFile, OutputStream outputStream) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(resolve(storedFile.getContentHash()), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long size = fileChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += fileChannel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    @Override
+    public long deleteUnreferencedContent(Function<Collection<String>, Collection<String>> findReferencedContentHashes, Duration gracePeriod) throws IOException {
+        if (Files.notExists(directory)) {
+            return 0;
+        }
+        Instant touchedBefore = Instant.now().minus(gracePeriod);
+        Map<String, Path> candidates = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path) && isTouchedBefore(path, touchedBefore)) {
+                    String fileName = path.getFileName().toString();
+                    if (fileName.contains(".")) {
+                        // temporary file left behind by a crash
+                        Files.deleteIfExists(path);
+                    } else {
+                        candidates.put(fileName, path);
+                    }
+                }
+            }
+        }
+        long deleted = 0;
+        List<String> contentHashes = new ArrayList<>(candidates.keySet());
+        for (int from = 0; from < contentHashes.size(); from += DELETE_BATCH_SIZE) {
+            List<String> batch = contentHashes.subList(from, Math.min(from + DELETE_BATCH_SIZE, contentHashes.size()));
+            Collection<String> referencedContentHashes = findReferencedContentHashes.apply(batch);
+            for (String contentHash : batch.stream().filter(contentHash -> !referencedContentHashes.contains(contentHash)).collect(Collectors.toList())) {
+                if (deleteIfTouchedBefore(candidates.get(contentHash), touchedBefore)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Moves the content aside before checking its modification time once more. A concurrent save either touched it
+     * before, and the content is moved back, or finds it missing and writes it again.
+     */
+    private boolean deleteIfTouchedBefore(Path path, Instant touchedBefore) throws IOException {
+        Path deletedPath = path.resolveSibling(path.getFileName() + DELETED_SUFFIX);
+        try {
+            Files.move(path, deletedPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (isTouchedBefore(deletedPath, touchedBefore)) {
+            Files.delete(deletedPath);
+            return true;
+        }
+        Files.move(deletedPath, path, StandardCopyOption.ATOMIC_MOVE);
+        return false;
+    }
+
+    private static boolean isTouchedBefore(Path path, Instant touchedBefore) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(touchedBefore);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks existing content as in use, returns false if there is no such content.
+     */
+    private static boolean touch(Path path) throws IOException {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private Path resolve(String contentHash) {
+        return directory.resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileStorageType;
+import com.example.fullstacktemplate.model.FileType;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Immutable snapshot of a {@link FileDb} for reading its content. Unlike the entity it can be cached and shared between
+ * requests, since nobody can change it or attach it to a session.
+ */
+@Getter
+public class StoredFile {
+
+    private final Long id;
+    private final String name;
+    private final FileType type;
+    private final String contentHash;
+    private final Long size;
+    private final FileStorageType storageType;
+    /**
+     * Content of files kept in {@link FileStorageType#DATABASE}, not exposed so that it cannot be modified.
+     */
+    @Getter(AccessLevel.NONE)
+    private final byte[] data;
+
+    public StoredFile(FileDb fileDb) {
+        this.id = fileDb.getId();
+        this.name = fileDb.getName();
+        this.type = fileDb.getType();
+        this.contentHash = fileDb.getContentHash();
+        this.size = fileDb.getSize();
+        this.storageType = fileDb.getStorageType();
+        this.data = fileDb.getData() == null ? null : fileDb.getData().clone();
+    }
+
+    /**
+     * Returns a copy of the content kept in the file row.
+     */
+    public byte[] copyData() {
+        return data == null ? null : data.clone();
+    }
+
+    public void writeData(OutputStream outputStream) throws IOException {
+        outputStream.write(data);
+    }
+
+    /**
+     * Number of bytes held by this snapshot, used to bound the cache.
+     */
+    public int getDataLength() {
+        return data == null ? 0 : data.length;
+    }
+}
@@ -0,0 +1,48 @@
+-- Schema as Hibernate created it before Flyway was introduced. Databases created back then are baselined at this
+-- version and start with V2.
+create sequence hibernate_sequence start with 1 increment by 1;
+
+create table file (
+    id bigint generated by default as identity,
+    data blob,
+    name varchar(255),
+    type varchar(255),
+    primary key (id)
+);
+
+create table jwt_token (
+    id bigint not null,
+    token_type varchar(255) not null,
+    value varchar(255),
+    user_id bigint not null,
+    primary key (id)
+);
+
+create table two_factor_recovery_code (
+    id bigint not null,
+    recovery_code varchar(255),
+    user_id bigint,
+    primary key (id)
+);
+
+create table users (
+    id bigint generated by default as identity,
+    auth_provider varchar(255) not null,
+    email varchar(255) not null,
+    email_verified boolean not null,
+    name varchar(255) not null,
+    password varchar(255),
+    provider_id varchar(255),
+    requested_new_email varchar(255),
+    role varchar(255) not null,
+    two_factor_enabled boolean not null,
+    two_factor_secret varchar(255),
+    profile_image bigint,
+    primary key (id)
+);
+
+alter table users add constraint UK_6dotkott2kjsp8vw4d0m25fb7 unique (email);
+alter table users add constraint UK_3g1j96g94xpk3lpxl2qbl985x unique (name);
+alter table jwt_token add constraint FKc8byj5reo1231wqon0fxk476w foreign key (user_id) references users;
+alter table two_factor_recovery_code add constraint FKfmgk3b9btm7rfvep28rpoiv9q foreign key (user_id) references users;
+alter table users add constraint FKptwmlylqd7wij2fbrhqhosmi3 foreign key (profile_image) references file;
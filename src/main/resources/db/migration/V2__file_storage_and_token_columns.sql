@@ -0,0 +1,25 @@
+-- Files are addressed by their content hash, shared by reference count and may keep their content outside the table.
+alter table file add column content_hash varchar(64);
+alter table file add column size bigint;
+alter table file add column reference_count integer default 0 not null;
+alter table file add column original_id bigint;
+alter table file add column variant_size integer;
+alter table file add column storage_type varchar(255) default 'DATABASE' not null;
+update file set content_hash = lower(rawtohex(hash('SHA256', data))), size = length(data) where data is not null;
+update file set reference_count = (select count(*) from users where users.profile_image = file.id);
+create index file_content_hash_idx on file (content_hash);
+create index file_original_id_idx on file (original_id);
+
+alter table users add column token_version integer default 0 not null;
+
+-- Stored tokens are looked up by their digest and purged once they expire. The expiration of existing tokens is filled
+-- in by V3 before the column becomes not null.
+alter table jwt_token add column digest varchar(43);
+alter table jwt_token add column expires_at timestamp;
+create index jwt_token_user_type_idx on jwt_token (user_id, token_type);
+create index jwt_token_expires_at_idx on jwt_token (expires_at);
+alter table jwt_token add constraint jwt_token_digest_type_uk unique (digest, token_type);
+
+-- Token ids are allocated in blocks of 50. The pooled optimizer hands out the 50 ids up to the value it reads.
+create sequence jwt_token_seq start with 50 increment by 50;
+alter sequence jwt_token_seq restart with (select coalesce(max(id), 0) + 50 from jwt_token);
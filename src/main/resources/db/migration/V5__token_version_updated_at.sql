@@ -0,0 +1,3 @@
+-- Instances evict cached token versions of users whose version changed since their last refresh.
+alter table users add column token_version_updated_at timestamp;
+create index users_token_version_updated_at_idx on users (token_version_updated_at);
@@ -0,0 +1,4 @@
+-- Instances load just the revocations stored since their last refresh. Tokens stored before have no creation time and
+-- are loaded by the full load at startup only.
+alter table jwt_token add column created_at timestamp;
+create index jwt_token_type_created_at_idx on jwt_token (token_type, created_at);
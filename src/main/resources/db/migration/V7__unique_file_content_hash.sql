@@ -0,0 +1,20 @@
+-- Originals with the same content, stored by concurrent uploads, are merged into the oldest one. Their users,
+-- variants and references move over, the content is the same and stays in the storage.
+create table file_duplicate as
+select f.id as duplicate_id,
+       (select min(k.id) from file k where k.content_hash = f.content_hash and k.original_id is null) as file_id
+from file f
+where f.original_id is null
+  and exists (select 1 from file k where k.content_hash = f.content_hash and k.original_id is null and k.id < f.id);
+update users set profile_image = (select file_id from file_duplicate where duplicate_id = profile_image)
+where profile_image in (select duplicate_id from file_duplicate);
+update file set original_id = (select file_id from file_duplicate where duplicate_id = original_id)
+where original_id in (select duplicate_id from file_duplicate);
+update file set reference_count = reference_count + (select sum(d.reference_count) from file d join file_duplicate fd on fd.duplicate_id = d.id where fd.file_id = file.id)
+where id in (select file_id from file_duplicate);
+delete from file where id in (select duplicate_id from file_duplicate);
+drop table file_duplicate;
+
+-- Only originals are shared, a variant may have the content of another file. Unique indexes allow any number of nulls.
+alter table file add column original_content_hash varchar(64) as (case when original_id is null then content_hash end);
+create unique index file_original_content_hash_uk on file (original_content_hash);
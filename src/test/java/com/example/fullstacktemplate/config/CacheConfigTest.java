@@ -0,0 +1,57 @@
+package com.example.fullstacktemplate.config;
+
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CacheConfigTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Every repository call runs in its own session, so once the first one missed and cached the user, it is read from
+     * the second-level cache each time.
+     */
+    @Test
+    void publishesEntityCacheHits() {
+        User user = createUser();
+        userRepository.findById(user.getId()).orElseThrow();
+        double hits = userCacheGets("hit");
+
+        userRepository.findById(user.getId()).orElseThrow();
+        userRepository.findById(user.getId()).orElseThrow();
+
+        assertEquals(hits + 2, userCacheGets("hit"));
+    }
+
+    private double userCacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", User.CACHE_REGION).tag("result", result).functionCounter().count();
+    }
+
+    private User createUser() {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(false);
+        return userRepository.save(user);
+    }
+}
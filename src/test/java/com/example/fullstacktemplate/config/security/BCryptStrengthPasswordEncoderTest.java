@@ -0,0 +1,54 @@
+package com.example.fullstacktemplate.config.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BCryptStrengthPasswordEncoderTest {
+
+    private static final String PASSWORD = "password";
+
+    private final BCryptStrengthPasswordEncoder passwordEncoder = new BCryptStrengthPasswordEncoder(5);
+
+    @Test
+    void keepsHashOfConfiguredStrength() {
+        assertFalse(passwordEncoder.upgradeEncoding(passwordEncoder.encode(PASSWORD)));
+    }
+
+    @Test
+    void upgradesWeakerHash() {
+        assertTrue(passwordEncoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode(PASSWORD)));
+    }
+
+    /**
+     * Unlike the stock encoder, which keeps stronger hashes, so a lowered strength would never apply to them.
+     */
+    @Test
+    void downgradesStrongerHash() {
+        String strongerHash = new BCryptPasswordEncoder(6).encode(PASSWORD);
+
+        assertTrue(passwordEncoder.upgradeEncoding(strongerHash));
+        assertFalse(new BCryptPasswordEncoder(5).upgradeEncoding(strongerHash));
+        assertTrue(passwordEncoder.matches(PASSWORD, strongerHash));
+    }
+
+    @Test
+    void upgradesHashOfEveryVersion() {
+        assertTrue(passwordEncoder.upgradeEncoding(new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2A, 4).encode(PASSWORD)));
+        assertTrue(passwordEncoder.upgradeEncoding(new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2B, 4).encode(PASSWORD)));
+        assertTrue(passwordEncoder.upgradeEncoding(new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2Y, 4).encode(PASSWORD)));
+    }
+
+    /**
+     * Users signed up with OAuth2 have no password, other values are no hashes this encoder could replace.
+     */
+    @Test
+    void ignoresMissingAndUnknownHashes() {
+        assertFalse(passwordEncoder.upgradeEncoding(null));
+        assertFalse(passwordEncoder.upgradeEncoding(""));
+        assertFalse(passwordEncoder.upgradeEncoding("{noop}password"));
+        assertFalse(passwordEncoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode(PASSWORD) + "x"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.fullstacktemplate.config.security;
+
+import com.example.fullstacktemplate.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutorPasswordEncoderTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("password-");
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void hashesOnExecutor() {
+        ExecutorPasswordEncoder passwordEncoder = new ExecutorPasswordEncoder(new ThreadNamePasswordEncoder(), executor, new SimpleMeterRegistry());
+
+        assertTrue(passwordEncoder.encode("password").startsWith("password-"));
+        assertTrue(passwordEncoder.matches("password", "password"));
+    }
+
+    /**
+     * One check runs and one waits in the queue, the next one is rejected without waiting.
+     */
+    @Test
+    void rejectsChecksBeyondThreadsAndQueue() throws InterruptedException {
+        ExecutorPasswordEncoder passwordEncoder = new ExecutorPasswordEncoder(new BlockingPasswordEncoder(), executor, new SimpleMeterRegistry());
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("password", "password"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("password", "password"));
+        awaitQueued();
+
+        ServiceUnavailableException exception = assertThrows(ServiceUnavailableException.class, () -> passwordEncoder.matches("password", "password"));
+
+        assertEquals("serverBusy", exception.getMessage());
+        release.countDown();
+        assertTrue(running.join());
+        assertTrue(queued.join());
+    }
+
+    @Test
+    void rethrowsExceptionOfDelegate() {
+        ExecutorPasswordEncoder passwordEncoder = new ExecutorPasswordEncoder(new ThreadNamePasswordEncoder(), executor, new SimpleMeterRegistry());
+
+        assertThrows(IllegalArgumentException.class, () -> passwordEncoder.encode(""));
+    }
+
+    private void awaitQueued() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getThreadPoolExecutor().getQueue().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, executor.getThreadPoolExecutor().getQueue().size());
+    }
+
+    private static class ThreadNamePasswordEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            if (rawPassword.length() == 0) {
+                throw new IllegalArgumentException("Empty password");
+            }
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return Thread.currentThread().getName().startsWith("password-");
+        }
+    }
+
+    private class BlockingPasswordEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
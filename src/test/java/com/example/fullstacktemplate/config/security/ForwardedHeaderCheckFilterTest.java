@@ -0,0 +1,43 @@
+package com.example.fullstacktemplate.config.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ForwardedHeaderCheckFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void requiresTrustedProxiesInProduction() {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setActiveProfiles("production");
+
+        assertThrows(IllegalStateException.class, () -> new ForwardedHeaderCheckFilter(environment, meterRegistry));
+
+        environment.setProperty(ForwardedHeaderCheckFilter.TRUSTED_PROXIES, "10\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}");
+        assertDoesNotThrow(() -> new ForwardedHeaderCheckFilter(environment, meterRegistry));
+    }
+
+    /**
+     * Tomcat removes the header of trusted proxies, so only headers of untrusted addresses reach the filter.
+     */
+    @Test
+    void countsForwardedHeadersOfUntrustedAddresses() throws Exception {
+        ForwardedHeaderCheckFilter filter = new ForwardedHeaderCheckFilter(new MockEnvironment(), meterRegistry);
+        MockHttpServletRequest forwarded = new MockHttpServletRequest();
+        forwarded.addHeader("X-Forwarded-For", "192.0.2.1");
+
+        filter.doFilter(forwarded, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(1, meterRegistry.get("http.forwarded.untrusted").counter().count());
+    }
+}
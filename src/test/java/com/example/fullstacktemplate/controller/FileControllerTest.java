@@ -0,0 +1,108 @@
+package com.example.fullstacktemplate.controller;
+
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileType;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.UserRepository;
+import com.example.fullstacktemplate.service.FileDbService;
+import com.example.fullstacktemplate.service.TokenService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class FileControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private FileDbService fileDbService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void answersUnknownFilesWithNotFound() throws Exception {
+        mockMvc.perform(get("/files/" + "0".repeat(64))).andExpect(status().isNotFound());
+        mockMvc.perform(get("/files/" + "0".repeat(64)).param("size", "64")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/files/unknown")).andExpect(status().isNotFound());
+    }
+
+    /**
+     * The hash of the profile image is selected with the user. The only query is the token version check of the
+     * access token.
+     */
+    @Test
+    void linksProfileImageWithoutQueryingFile() throws Exception {
+        FileDb profileImage = fileDbService.save("image.png", FileType.IMAGE_PNG, UUID.randomUUID().toString().getBytes());
+        User user = createUser(profileImage);
+        String accessToken = tokenService.createAccessTokenValue(user, Duration.ofMinutes(5));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        getCurrentUser(accessToken)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.profileImageUrl").value("http://localhost/files/" + profileImage.getContentHash()));
+
+        assertEquals(1, statistics.getQueryExecutionCount());
+    }
+
+    /**
+     * The second save of the same content returns the existing file, whose hash the user has to pick up as well.
+     */
+    @Test
+    void linksChangedProfileImage() throws Exception {
+        User user = createUser(fileDbService.save("image.png", FileType.IMAGE_PNG, UUID.randomUUID().toString().getBytes()));
+        String accessToken = tokenService.createAccessTokenValue(user, Duration.ofMinutes(5));
+        getCurrentUser(accessToken).andExpect(status().isOk());
+        byte[] content = UUID.randomUUID().toString().getBytes();
+        fileDbService.save("image.png", FileType.IMAGE_PNG, content);
+        FileDb profileImage = fileDbService.save("image.png", FileType.IMAGE_PNG, content);
+
+        user.setProfileImage(profileImage);
+        userRepository.save(user);
+
+        getCurrentUser(accessToken).andExpect(jsonPath("$.profileImageUrl").value("http://localhost/files/" + DigestUtils.sha256Hex(content)));
+    }
+
+    private ResultActions getCurrentUser(String accessToken) throws Exception {
+        return mockMvc.perform(get("/user/me").header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken));
+    }
+
+    private User createUser(FileDb profileImage) {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(false);
+        user.setProfileImage(profileImage);
+        return userRepository.save(user);
+    }
+}
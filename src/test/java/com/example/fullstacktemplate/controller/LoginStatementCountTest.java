@@ -0,0 +1,157 @@
+package com.example.fullstacktemplate.controller;
+
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TwoFactorRecoveryCode;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.TwoFactoryRecoveryCodeRepository;
+import com.example.fullstacktemplate.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.samstevens.totp.code.DefaultCodeGenerator;
+import dev.samstevens.totp.exceptions.CodeGenerationException;
+import dev.samstevens.totp.secret.DefaultSecretGenerator;
+import dev.samstevens.totp.time.SystemTimeProvider;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the SQL statements of the login paths, so that additional queries, such as loading the user once more, show
+ * up as failures.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class LoginStatementCountTest {
+
+    private static final String PASSWORD = "password";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TwoFactoryRecoveryCodeRepository twoFactoryRecoveryCodeRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+
+    /**
+     * The first token stored also fetches a block of ids from the token sequence, so one login runs before counting.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        login(createUser(false)).andExpect(status().isOk());
+    }
+
+    /**
+     * Loading the user with the password check and storing the refresh token.
+     */
+    @Test
+    void loginWithPassword() throws Exception {
+        User user = createUser(false);
+
+        statistics.clear();
+        login(user).andExpect(status().isOk()).andExpect(jsonPath("$.accessToken").isString());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Loading the user with the password check and storing the challenge, then loading the challenge with its user,
+     * deleting it and storing the refresh token.
+     */
+    @Test
+    void loginWithVerificationCode() throws Exception {
+        User user = createUser(true);
+
+        statistics.clear();
+        String challengeToken = getChallengeToken(login(user));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        verify("/auth/login/verify", challengeToken, generateCode(user)).andExpect(status().isOk()).andExpect(jsonPath("$.accessToken").isString());
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Like {@link #loginWithVerificationCode()}, with one more statement which deletes the recovery code.
+     */
+    @Test
+    void loginWithRecoveryCode() throws Exception {
+        User user = createUser(true);
+        TwoFactorRecoveryCode recoveryCode = new TwoFactorRecoveryCode();
+        recoveryCode.setUser(user);
+        recoveryCode.setRecoveryCode(UUID.randomUUID().toString());
+        twoFactoryRecoveryCodeRepository.save(recoveryCode);
+
+        String challengeToken = getChallengeToken(login(user));
+
+        statistics.clear();
+        verify("/auth/login/recovery-code", challengeToken, recoveryCode.getRecoveryCode()).andExpect(status().isOk()).andExpect(jsonPath("$.accessToken").isString());
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+
+    private ResultActions login(User user) throws Exception {
+        return mockMvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("email", user.getEmail(), "password", PASSWORD))));
+    }
+
+    private ResultActions verify(String path, String challengeToken, String code) throws Exception {
+        return mockMvc.perform(post(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("challengeToken", challengeToken, "code", code))));
+    }
+
+    private String getChallengeToken(ResultActions login) throws Exception {
+        JsonNode response = objectMapper.readTree(login.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        assertEquals(true, response.path("twoFactorRequired").asBoolean());
+        return response.path("challengeToken").asText();
+    }
+
+    private static String generateCode(User user) throws CodeGenerationException {
+        return new DefaultCodeGenerator().generate(user.getTwoFactorSecret(), Math.floorDiv(new SystemTimeProvider().getTime(), 30));
+    }
+
+    private User createUser(boolean twoFactorEnabled) {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(twoFactorEnabled);
+        if (twoFactorEnabled) {
+            user.setTwoFactorSecret(new DefaultSecretGenerator(64).generate());
+        }
+        return userRepository.save(user);
+    }
+}
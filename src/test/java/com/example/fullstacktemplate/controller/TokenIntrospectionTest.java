@@ -0,0 +1,99 @@
+package com.example.fullstacktemplate.controller;
+
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.UserRepository;
+import com.example.fullstacktemplate.service.TokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Only configured clients may introspect tokens, and malformed requests are rejected before any token is looked at.
+ */
+@SpringBootTest(properties = "app.auth.introspectionClients.service={noop}secret")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class TokenIntrospectionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void introspectsTokensOfClient() throws Exception {
+        User user = createUser();
+        String accessToken = tokenService.createAccessTokenValue(user, Duration.ofMinutes(5));
+
+        introspect(httpBasic("service", "secret"), "[\"" + accessToken + "\", \"unknown\"]")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].active").value(true))
+                .andExpect(jsonPath("$[0].userId").value(user.getId()))
+                .andExpect(jsonPath("$[0].tokenType").value(TokenType.ACCESS.name()))
+                .andExpect(jsonPath("$[1].active").value(false));
+    }
+
+    @Test
+    void rejectsOtherClients() throws Exception {
+        mockMvc.perform(post("/auth/introspect").contentType(MediaType.APPLICATION_JSON).content("{\"tokens\": [\"token\"]}"))
+                .andExpect(status().isUnauthorized());
+        introspect(httpBasic("service", "wrong"), "[\"token\"]")
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void rejectsMissingAndBlankTokens() throws Exception {
+        introspect(httpBasic("service", "secret"), "[]").andExpect(status().isBadRequest());
+        introspect(httpBasic("service", "secret"), "[null]").andExpect(status().isBadRequest());
+        introspect(httpBasic("service", "secret"), "[\"token\", \" \"]").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rejectsTooManyTokens() throws Exception {
+        introspect(httpBasic("service", "secret"), "[\"token\"" + ", \"token\"".repeat(100) + "]")
+                .andExpect(status().isBadRequest());
+        introspect(httpBasic("service", "secret"), "[" + String.join(", ", Collections.nCopies(1001, "\"token\"")) + "]")
+                .andExpect(status().isBadRequest());
+    }
+
+    private ResultActions introspect(RequestPostProcessor authentication, String tokens) throws Exception {
+        MockHttpServletRequestBuilder request = post("/auth/introspect")
+                .with(authentication)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tokens\": " + tokens + "}");
+        return mockMvc.perform(request);
+    }
+
+    private User createUser() {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(false);
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.fullstacktemplate.migration;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs V7 on files stored twice before the content hash of originals was unique.
+ */
+class UniqueFileContentHashMigrationTest {
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+    @Test
+    void mergesDuplicateOriginals() throws SQLException {
+        migrate("6");
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("insert into file (id, content_hash, reference_count, original_id) values (1, 'a', 1, null), (2, 'a', 2, null), (3, 'b', 1, 2), (4, 'b', 1, null)");
+            statement.execute("insert into users (id, auth_provider, email, email_verified, name, role, two_factor_enabled, profile_image) values (1, 'local', 'user@example.com', true, 'user', 'USER', false, 2)");
+        }
+
+        migrate("latest");
+
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            assertEquals(3, queryLong(statement, "select reference_count from file where id = 1"));
+            assertFalse(statement.executeQuery("select id from file where id = 2").next());
+            assertEquals(1, queryLong(statement, "select original_id from file where id = 3"));
+            assertEquals(1, queryLong(statement, "select profile_image from users where id = 1"));
+            ResultSet variant = statement.executeQuery("select original_content_hash from file where id = 3");
+            variant.next();
+            assertNull(variant.getString(1));
+            assertThrows(SQLException.class, () -> statement.execute("insert into file (content_hash, reference_count) values ('b', 1)"));
+        }
+    }
+
+    private void migrate(String target) {
+        Flyway.configure()
+                .dataSource(url, "sa", "")
+                .locations("classpath:db/migration", "classpath:com/example/fullstacktemplate/migration")
+                .target(target)
+                .load()
+                .migrate();
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        ResultSet resultSet = statement.executeQuery(sql);
+        resultSet.next();
+        return resultSet.getLong(1);
+    }
+}
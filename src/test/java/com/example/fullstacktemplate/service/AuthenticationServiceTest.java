@@ -0,0 +1,86 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.security.UserPrincipal;
+import com.example.fullstacktemplate.dto.AuthResponseDto;
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.UserRepository;
+import dev.samstevens.totp.secret.DefaultSecretGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class AuthenticationServiceTest {
+
+    private static final Duration EXPIRATION = Duration.ofMinutes(5);
+
+    @Autowired
+    private AuthenticationService authenticationService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * OAuth2 logins of users with two-factor authentication end with the same challenge as password logins.
+     */
+    @Test
+    void challengesOAuth2LoginWithTwoFactor() {
+        User user = createUser(true);
+
+        AuthResponseDto authResponseDto = authenticationService.login(UserPrincipal.create(user, Map.of()));
+
+        assertTrue(authResponseDto.getTwoFactorRequired());
+        assertNull(authResponseDto.getAccessToken());
+        assertNotNull(authResponseDto.getChallengeToken());
+        assertEquals(user.getId(), tokenService.findValidToken(authResponseDto.getChallengeToken(), TokenType.TWO_FACTOR_CHALLENGE).orElseThrow().getUser().getId());
+    }
+
+    /**
+     * Changing the password increments the token version, which rejects access tokens issued before, even those
+     * already verified and cached.
+     */
+    @Test
+    void revokesAccessTokensOfPreviousTokenVersion() {
+        User user = createUser(false);
+        String oldAccessToken = tokenService.createAccessTokenValue(user, EXPIRATION);
+        assertTrue(tokenService.parseAccessToken(oldAccessToken).isPresent());
+
+        user = userService.updateUserPassword(user, "new password");
+        String newAccessToken = tokenService.createAccessTokenValue(user, EXPIRATION);
+
+        assertTrue(tokenService.parseAccessToken(oldAccessToken).isEmpty());
+        assertEquals(user.getId(), tokenService.parseAccessToken(newAccessToken).orElseThrow().getUserId());
+    }
+
+    private User createUser(boolean twoFactorEnabled) {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.github);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(twoFactorEnabled);
+        if (twoFactorEnabled) {
+            user.setTwoFactorSecret(new DefaultSecretGenerator(64).generate());
+        }
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.TokenKey;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that tokens are accepted or rejected by {@link CompactJwtVerifier}, falling back to jjwt as
+ * {@link TokenService} does, exactly when jjwt alone accepts or rejects them, and that the claims are the same.
+ */
+class CompactJwtVerifierTest {
+
+    private static final int TOKENS = 3000;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final String[] FRAGMENTS = {"a", "Z", "0", "-", " ", "\"", "\\", "/", "\n", "\t", "\u0001", "\u007f",
+            "é", "中", " ", "😀", "\\u0041", "'", "{", "}", "[", ",", ":", "."};
+
+    private final TokenKey key = tokenKey("k1", 1);
+    private final TokenKey otherKey = tokenKey("k2", 2);
+    /**
+     * Signs tokens, but is not known to the verifiers.
+     */
+    private final TokenKey unknownKey = tokenKey("k3", 3);
+    private final Map<String, TokenKey> keys = Map.of(key.getKid(), key, otherKey.getKid(), otherKey);
+    private final Function<String, Optional<TokenKey>> keyResolver = kid -> kid == null ? Optional.empty() : Optional.ofNullable(keys.get(kid));
+    private final CompactJwtVerifier verifier = new CompactJwtVerifier(keyResolver);
+    private int decidedByVerifier;
+
+    @Test
+    void verifiesTokenIssuedByJjwt() {
+        long expiration = (System.currentTimeMillis() + HOUR) / 1000 * 1000;
+        String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, key.getKid())
+                .setSubject("subject")
+                .setExpiration(new Date(expiration))
+                .setIssuer("issuer")
+                .claim(TokenService.TOKEN_TYPE_CLAIM, "ACCESS")
+                .claim(TokenService.TOKEN_VERSION_CLAIM, 7)
+                .claim(TokenService.USER_CLAIM, "user")
+                .signWith(SignatureAlgorithm.HS512, key.getSigningKey())
+                .compact();
+
+        CompactJwtVerifier.VerifiedClaims claims = verifier.verify(token);
+
+        assertNotNull(claims);
+        assertEquals(key, claims.getTokenKey());
+        assertEquals("subject", claims.getSubject());
+        assertEquals(expiration, claims.getExpiration());
+        assertEquals("issuer", claims.getIssuer());
+        assertEquals("ACCESS", claims.getTokenType());
+        assertEquals(7, claims.getTokenVersion());
+        assertEquals("user", claims.getUser());
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"sub\":\"subject\",\"exp\":1}");
+
+        assertThrows(ExpiredJwtException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void rejectsTokenOfUnknownKey() {
+        String token = sign(unknownKey, "{\"kid\":\"k3\",\"alg\":\"HS512\"}", "{\"sub\":\"subject\"}");
+
+        assertThrows(SignatureException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void rejectsTokenSignedWithOtherKey() {
+        String token = sign(otherKey, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"sub\":\"subject\"}");
+
+        assertThrows(SignatureException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void leavesTokensOutsideOfScannedSubsetToJjwt() {
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS256\"}", "{\"sub\":\"subject\"}")));
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\",\"zip\":\"DEF\"}", "{\"sub\":\"subject\"}")));
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"sub\":{\"nested\":true}}")));
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"sub\":\"subject\",\"nbf\":1}")));
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"exp\":01}")));
+        assertNull(verifier.verify(sign(key, "{\"kid\":\"k1\",\"alg\":\"HS512\"}", "{\"sub\":\"subject\"} ")));
+    }
+
+    @Test
+    void decidesTokensIssuedByJjwtLikeJjwt() {
+        Random random = new Random(20);
+        for (int i = 0; i < TOKENS; i++) {
+            assertSameOutcome(jjwtToken(random));
+        }
+        assertTrue(decidedByVerifier > TOKENS / 5, "too few tokens were decided by the verifier itself");
+    }
+
+    @Test
+    void decidesHandWrittenTokensLikeJjwt() {
+        Random random = new Random(21);
+        for (int i = 0; i < TOKENS; i++) {
+            assertSameOutcome(handWrittenToken(random));
+        }
+        assertTrue(decidedByVerifier > TOKENS / 5, "too few tokens were decided by the verifier itself");
+    }
+
+    @Test
+    void decidesDamagedTokensLikeJjwt() {
+        Random random = new Random(22);
+        for (int i = 0; i < TOKENS; i++) {
+            String token = random.nextBoolean() ? jjwtToken(random) : handWrittenToken(random);
+            assertSameOutcome(damage(token, random));
+        }
+    }
+
+    @Test
+    void decidesRandomStringsLikeJjwt() {
+        Random random = new Random(23);
+        for (int i = 0; i < TOKENS; i++) {
+            StringBuilder token = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                token.append(random.nextInt(5) == 0 ? '.' : (char) (32 + random.nextInt(95)));
+            }
+            assertSameOutcome(token.toString());
+        }
+    }
+
+    private void assertSameOutcome(String token) {
+        assertEquals(outcomeOfJjwt(token), outcomeOfVerifier(token), token);
+    }
+
+    private String outcomeOfVerifier(String token) {
+        CompactJwtVerifier.VerifiedClaims claims;
+        try {
+            claims = verifier.verify(token);
+        } catch (RuntimeException e) {
+            decidedByVerifier++;
+            return "rejected";
+        }
+        if (claims == null) {
+            return outcomeOfJjwt(token);
+        }
+        decidedByVerifier++;
+        return accepted(claims);
+    }
+
+    private String outcomeOfJjwt(String token) {
+        TokenKey[] resolvedKey = new TokenKey[1];
+        try {
+            Claims claims = Jwts.parser()
+                    .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                        @Override
+                        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                            resolvedKey[0] = keyResolver.apply(header.getKeyId())
+                                    .orElseThrow(() -> new SignatureException("Unknown key"));
+                            return resolvedKey[0].getSigningKey();
+                        }
+                    })
+                    .parseClaimsJws(token)
+                    .getBody();
+            return accepted(CompactJwtVerifier.VerifiedClaims.of(resolvedKey[0], claims, true));
+        } catch (RuntimeException e) {
+            return "rejected";
+        }
+    }
+
+    private static String accepted(CompactJwtVerifier.VerifiedClaims claims) {
+        return String.join("|", "accepted", claims.getTokenKey().getKid(), claims.getSubject(), String.valueOf(claims.getExpiration()),
+                claims.getIssuer(), claims.getTokenType(), String.valueOf(claims.getTokenVersion()), claims.getUser());
+    }
+
+    private String jjwtToken(Random random) {
+        TokenKey signingKey = randomKey(random);
+        JwtBuilder builder = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, random.nextInt(10) == 0 ? pick(random, "k1", "k2", "k3", "") : signingKey.getKid())
+                .setId(Integer.toString(random.nextInt()));
+        if (random.nextInt(10) == 0) {
+            builder.setHeaderParam("typ", "JWT");
+        }
+        long now = System.currentTimeMillis();
+        switch (random.nextInt(5)) {
+            case 0:
+                break;
+            case 1:
+                builder.setExpiration(new Date(now - HOUR - random.nextInt(1000000000)));
+                break;
+            case 2:
+                builder.claim(Claims.EXPIRATION, randomValue(random));
+                break;
+            default:
+                builder.setExpiration(new Date(now + HOUR + random.nextInt(1000000000)));
+        }
+        for (String claim : List.of(Claims.SUBJECT, Claims.ISSUER, TokenService.TOKEN_TYPE_CLAIM, TokenService.USER_CLAIM,
+                TokenService.TOKEN_VERSION_CLAIM, Claims.NOT_BEFORE, "other")) {
+            if (random.nextBoolean()) {
+                builder.claim(claim, random.nextInt(4) == 0 ? randomValue(random) : randomString(random));
+            }
+        }
+        return builder.signWith(SignatureAlgorithm.HS512, signingKey.getSigningKey()).compact();
+    }
+
+    private static Object randomValue(Random random) {
+        switch (random.nextInt(7)) {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return random.nextLong();
+            case 2:
+                return random.nextDouble();
+            case 3:
+                return random.nextBoolean();
+            case 4:
+                return Map.of("nested", randomString(random));
+            case 5:
+                return List.of(random.nextInt());
+            default:
+                return Long.toString(Instant.now().getEpochSecond() + random.nextInt(7200) - 3600 + 7200);
+        }
+    }
+
+    /**
+     * Writes the JSON of header and claims itself, so that the tokens also cover JSON which jjwt never writes. Tokens
+     * are mostly well-formed, with at most one irregular member and some irregular whitespace, so that irregularities
+     * are not hidden behind others.
+     */
+    private String handWrittenToken(Random random) {
+        TokenKey signingKey = randomKey(random);
+        Map<String, String> header = new HashMap<>();
+        header.put("alg", random.nextInt(10) == 0 ? pick(random, "\"HS256\"", "\"none\"", "512", "\"HS\\u0035\\u0031\\u0032\"") : "\"HS512\"");
+        header.put("kid", random.nextInt(10) == 0 ? pick(random, "\"k3\"", "null", "1", "\"k\\u0031\"") : "\"" + signingKey.getKid() + "\"");
+        if (random.nextInt(10) == 0) {
+            header.put(pick(random, "zip", "typ", "cty"), pick(random, "\"DEF\"", "\"JWT\"", "{}", "true"));
+        }
+        Map<String, String> claims = new HashMap<>();
+        long expiration = System.currentTimeMillis() / 1000 + (random.nextInt(4) == 0 ? -1 : 1) * (3600 + random.nextInt(1000000));
+        claims.put("exp", Long.toString(expiration));
+        claims.put(TokenService.TOKEN_VERSION_CLAIM, Integer.toString(random.nextInt(100)));
+        for (String claim : List.of("sub", "iss", TokenService.TOKEN_TYPE_CLAIM, TokenService.USER_CLAIM)) {
+            if (random.nextInt(4) != 0) {
+                claims.put(claim, randomJsonString(random));
+            }
+        }
+        if (random.nextBoolean()) {
+            claims.put(pick(random, "exp", "sub", "iss", TokenService.TOKEN_TYPE_CLAIM, TokenService.USER_CLAIM,
+                    TokenService.TOKEN_VERSION_CLAIM, "nbf", "other", "s\\u0075b"), irregularJsonValue(random));
+        }
+        return sign(signingKey, json(header, random), json(claims, random));
+    }
+
+    private static String json(Map<String, String> members, Random random) {
+        StringBuilder json = new StringBuilder("{");
+        members.forEach((name, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(whitespace(random)).append('"').append(name).append('"').append(whitespace(random)).append(':')
+                    .append(whitespace(random)).append(value).append(whitespace(random));
+        });
+        if (random.nextInt(20) == 0) {
+            json.append(",\"").append(pick(random, members.keySet().toArray(String[]::new))).append("\":").append(irregularJsonValue(random));
+        }
+        json.append('}');
+        if (random.nextInt(20) == 0) {
+            json.append(pick(random, " ", "}", ",", "x"));
+        }
+        if (random.nextInt(20) == 0) {
+            json.insert(0, ' ');
+        }
+        return json.toString();
+    }
+
+    private static String irregularJsonValue(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return pick(random, "true", "false", "null", "nul", "tru", "truex");
+            case 1:
+                return pick(random, "0", "-0", "00", "01", "-01", "-", "1.5", "1e3", "1E3", "123456789012345678",
+                        "1234567890123456789", "2147483648", "-1", "1x");
+            case 2:
+                return pick(random, "{}", "[]", "[1]", "{\"a\":1}");
+            case 3:
+                return "\"" + pick(random, "\\\"", "\\\\", "\\/", "\\b\\f\\n\\r\\t", "\\u00e9", "\\ud83d\\ude00", "\\u12",
+                        "\\x", "\\uZZZZ", "\\", "\u0001", "\n", "\"", "\u007f") + "\"";
+            case 4:
+                return "\"" + randomString(random);
+            default:
+                return Long.toString(random.nextLong() % 100000000000L);
+        }
+    }
+
+    private static String randomJsonString(Random random) {
+        StringBuilder value = new StringBuilder("\"");
+        String string = randomString(random);
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                value.append('\\').append(c);
+            } else if (c < ' ') {
+                value.append(String.format("\\u%04x", (int) c));
+            } else {
+                value.append(c);
+            }
+        }
+        return value.append('"').toString();
+    }
+
+    private static String whitespace(Random random) {
+        if (random.nextInt(200) == 0) {
+            return "\u000b";
+        }
+        return random.nextInt(4) == 0 ? pick(random, " ", "\n", "\t\r ") : "";
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder string = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            string.append(random.nextInt(3) == 0 ? pick(random, FRAGMENTS) : Character.toString('a' + random.nextInt(26)));
+        }
+        return string.toString();
+    }
+
+    private String damage(String token, Random random) {
+        StringBuilder damaged = new StringBuilder(token);
+        int position = random.nextInt(token.length());
+        switch (random.nextInt(6)) {
+            case 0:
+                damaged.setLength(position);
+                break;
+            case 1:
+                damaged.setCharAt(position, (char) (token.charAt(position) ^ (1 << random.nextInt(7))));
+                break;
+            case 2:
+                damaged.deleteCharAt(position);
+                break;
+            case 3:
+                damaged.insert(position, pick(random, "A", "=", ".", "+", "/", "_", "-", "!", "é"));
+                break;
+            case 4:
+                String other = random.nextBoolean() ? jjwtToken(random) : handWrittenToken(random);
+                return token.substring(0, token.lastIndexOf('.')) + other.substring(other.lastIndexOf('.'));
+            default:
+                damaged.append('=');
+        }
+        return damaged.toString();
+    }
+
+    private TokenKey randomKey(Random random) {
+        int choice = random.nextInt(10);
+        return choice == 0 ? unknownKey : choice == 1 ? otherKey : key;
+    }
+
+    private static String pick(Random random, String... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String sign(TokenKey signingKey, String header, String claims) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String content = encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        try {
+            Mac mac = Mac.getInstance(CryptoService.HMAC_SHA512);
+            mac.init(signingKey.getSigningKey());
+            return content + "." + encoder.encodeToString(mac.doFinal(content.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static TokenKey tokenKey(String kid, int seed) {
+        byte[] secret = new byte[64];
+        new Random(seed).nextBytes(secret);
+        return new TokenKey(kid, Instant.now(), new SecretKeySpec(secret, CryptoService.HMAC_SHA512), null, null, null);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.fullstacktemplate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Ciphers are kept per thread and only re-initialized, so these tests run several operations on the same instances.
+ */
+class CryptoServiceTest {
+
+    private CryptoService cryptoService;
+    private SecretKey key;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        key = cryptoService.generateKey(256);
+    }
+
+    @Test
+    void decryptsWhatWasEncryptedWithReusedCipher() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            String input = "secret " + i;
+            assertEquals(input, cryptoService.decrypt(cryptoService.encrypt(input, key), key));
+        }
+    }
+
+    /**
+     * GCM must never see the same nonce twice under one key, so equal inputs give different cipher texts.
+     */
+    @Test
+    void usesFreshNonceForEveryEncryption() throws Exception {
+        String first = cryptoService.encrypt("secret", key);
+        String second = cryptoService.encrypt("secret", key);
+
+        assertFalse(Arrays.equals(nonce(first), nonce(second)));
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void decryptsWithCipherUsedForOtherKey() throws Exception {
+        SecretKey otherKey = cryptoService.generateKey(256);
+        String cipherText = cryptoService.encrypt("secret", key);
+        cryptoService.encrypt("other", otherKey);
+
+        assertEquals("secret", cryptoService.decrypt(cipherText, key));
+    }
+
+    @Test
+    void keepsWorkingAfterRejectedCipherText() throws Exception {
+        byte[] tampered = Base64.getDecoder().decode(cryptoService.encrypt("secret", key));
+        tampered[tampered.length - 1] ^= 1;
+
+        assertThrows(AEADBadTagException.class, () -> cryptoService.decrypt(Base64.getEncoder().encodeToString(tampered), key));
+
+        assertEquals("secret", cryptoService.decrypt(cryptoService.encrypt("secret", key), key));
+    }
+
+    @Test
+    void keepsSeparateCipherPerAlgorithm() throws Exception {
+        IvParameterSpec iv = cryptoService.generateInitializationVector();
+        String gcm = cryptoService.encrypt("gcm", key);
+        String cbc = cryptoService.encrypt(CryptoService.AES_CBC, "cbc", key, iv);
+
+        assertEquals("gcm", cryptoService.decrypt(gcm, key));
+        assertEquals("cbc", cryptoService.decrypt(CryptoService.AES_CBC, cbc, key, iv));
+    }
+
+    @Test
+    void decryptsCipherTextOfOtherThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String input = "secret " + i;
+                tasks.add(() -> cryptoService.encrypt(input, key));
+            }
+            List<Future<String>> cipherTexts = executor.invokeAll(tasks);
+            for (int i = 0; i < cipherTexts.size(); i++) {
+                assertEquals("secret " + i, cryptoService.decrypt(cipherTexts.get(i).get(), key));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] nonce(String cipherText) {
+        return Arrays.copyOf(Base64.getDecoder().decode(cipherText), 12);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileType;
+import com.example.fullstacktemplate.repository.FileDbRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class FileDbServiceTest {
+
+    private static final int UPLOADS = 8;
+
+    @Autowired
+    private FileDbService fileDbService;
+    @Autowired
+    private FileDbRepository fileDbRepository;
+
+    /**
+     * Uploads which all miss the existing file insert it concurrently. One insert wins, the others reference it.
+     */
+    @Test
+    void storesConcurrentUploadsOfSameContentOnce() throws Exception {
+        byte[] content = UUID.randomUUID().toString().getBytes();
+        ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> uploads = new ArrayList<>();
+        try {
+            for (int i = 0; i < UPLOADS; i++) {
+                uploads.add(executor.submit(() -> {
+                    start.await();
+                    return fileDbService.save("image.png", FileType.IMAGE_PNG, content).getId();
+                }));
+            }
+            start.countDown();
+            Set<Long> ids = new HashSet<>();
+            for (Future<Long> upload : uploads) {
+                ids.add(upload.get());
+            }
+
+            assertEquals(1, ids.size());
+            FileDb fileDb = fileDbRepository.findById(ids.iterator().next()).orElseThrow();
+            assertEquals(UPLOADS, fileDb.getReferenceCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
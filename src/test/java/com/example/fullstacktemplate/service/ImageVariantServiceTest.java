@@ -0,0 +1,155 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.exception.ServiceUnavailableException;
+import com.example.fullstacktemplate.model.FileType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageVariantServiceTest {
+
+    private static final String SECRET = "GPS 50.0755N 14.4378E";
+
+    private ThreadPoolTaskExecutor imageExecutor;
+    private ImageVariantService imageVariantService;
+
+    @BeforeEach
+    void setUp() {
+        imageExecutor = new ThreadPoolTaskExecutor();
+        imageExecutor.setCorePoolSize(1);
+        imageExecutor.setMaxPoolSize(1);
+        imageExecutor.setQueueCapacity(0);
+        imageExecutor.initialize();
+        imageVariantService = new ImageVariantService(null, new AppProperties(), imageExecutor, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageExecutor.shutdown();
+    }
+
+    @Test
+    void stripsExifFromJpeg() throws IOException {
+        byte[] jpeg = encode(new BufferedImage(32, 16, BufferedImage.TYPE_INT_RGB), "jpeg");
+        byte[] payload = concat("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1), SECRET.getBytes(StandardCharsets.ISO_8859_1));
+        byte[] app1 = concat(new byte[]{(byte) 0xFF, (byte) 0xE1, (byte) ((payload.length + 2) >> 8), (byte) (payload.length + 2)}, payload);
+        byte[] upload = concat(concat(copyOf(jpeg, 0, 2), app1), copyOf(jpeg, 2, jpeg.length));
+        assertTrue(contains(upload, SECRET));
+
+        byte[] stored = imageVariantService.stripMetadata(upload, FileType.IMAGE_JPEG);
+
+        assertFalse(contains(stored, SECRET));
+        assertDimensions(stored, 32, 16);
+    }
+
+    @Test
+    void stripsTextChunksFromPng() throws IOException {
+        byte[] png = encode(new BufferedImage(16, 32, BufferedImage.TYPE_INT_ARGB), "png");
+        byte[] chunkData = concat("Comment\0".getBytes(StandardCharsets.ISO_8859_1), SECRET.getBytes(StandardCharsets.ISO_8859_1));
+        byte[] typeAndData = concat("tEXt".getBytes(StandardCharsets.ISO_8859_1), chunkData);
+        CRC32 crc = new CRC32();
+        crc.update(typeAndData);
+        byte[] chunk = concat(concat(toBytes(chunkData.length), typeAndData), toBytes((int) crc.getValue()));
+        // after the signature and the IHDR chunk
+        int headerEnd = 8 + 25;
+        byte[] upload = concat(concat(copyOf(png, 0, headerEnd), chunk), copyOf(png, headerEnd, png.length));
+        assertTrue(contains(upload, SECRET));
+
+        byte[] stored = imageVariantService.stripMetadata(upload, FileType.IMAGE_PNG);
+
+        assertFalse(contains(stored, SECRET));
+        assertDimensions(stored, 16, 32);
+    }
+
+    @Test
+    void encodesTransparentImageUploadedAsJpeg() throws IOException {
+        byte[] png = encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png");
+
+        assertDimensions(imageVariantService.stripMetadata(png, FileType.IMAGE_JPEG), 8, 8);
+    }
+
+    @Test
+    void rejectsContentWhichIsNoImage() {
+        assertThrows(IOException.class, () -> imageVariantService.stripMetadata(SECRET.getBytes(StandardCharsets.UTF_8), FileType.IMAGE_PNG));
+    }
+
+    /**
+     * Uploads are answered with 503 instead of queueing on the request threads once the image executor is busy.
+     */
+    @Test
+    void rejectsUploadWhenExecutorIsSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        imageExecutor.execute(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        byte[] png = encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png");
+
+        assertThrows(ServiceUnavailableException.class, () -> imageVariantService.stripMetadata(png, FileType.IMAGE_PNG));
+
+        release.countDown();
+    }
+
+    @Test
+    void detectsTypeFromContent() throws IOException {
+        assertEquals(Optional.of(FileType.IMAGE_JPEG), imageVariantService.detectType(encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "jpeg")));
+        assertEquals(Optional.of(FileType.IMAGE_PNG), imageVariantService.detectType(encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png")));
+        assertEquals(Optional.empty(), imageVariantService.detectType(encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "gif")));
+        assertEquals(Optional.empty(), imageVariantService.detectType("<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertDimensions(byte[] content, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(content));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, format, output);
+        return output.toByteArray();
+    }
+
+    private static boolean contains(byte[] content, String text) {
+        return new String(content, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] copyOf(byte[] content, int from, int to) {
+        byte[] copy = new byte[to - from];
+        System.arraycopy(content, from, copy, 0, copy.length);
+        return copy;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
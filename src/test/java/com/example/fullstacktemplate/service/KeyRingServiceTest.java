@@ -0,0 +1,203 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.TokenKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Key rings with keys of a given age are written to the file before the service loads it.
+ */
+class KeyRingServiceTest {
+
+    private static final Duration ROTATION_PERIOD = Duration.ofDays(30);
+    private static final Duration ACTIVATION_DELAY = Duration.ofMinutes(5);
+    private static final Duration ACCESS_TOKEN_EXPIRATION = Duration.ofMinutes(5);
+    private static final Duration VERIFICATION_TOKEN_EXPIRATION = Duration.ofHours(1);
+    private static final Duration REFRESH_TOKEN_EXPIRATION = Duration.ofDays(60);
+
+    @TempDir
+    Path directory;
+
+    private final CryptoService cryptoService = new CryptoService();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private AppProperties appProperties;
+    private Path path;
+
+    @BeforeEach
+    void setUp() {
+        path = directory.resolve("keys").resolve("keyring.json");
+        appProperties = new AppProperties();
+        AppProperties.Auth auth = appProperties.getAuth();
+        auth.setAccessTokenExpirationMsec(ACCESS_TOKEN_EXPIRATION.toMillis());
+        auth.setVerificationTokenExpirationMsec(VERIFICATION_TOKEN_EXPIRATION.toMillis());
+        auth.setRefreshTokenExpirationMsec(REFRESH_TOKEN_EXPIRATION.toMillis());
+        auth.getKeyRing().setPath(path.toString());
+        auth.getKeyRing().setRotationPeriod(ROTATION_PERIOD);
+        auth.getKeyRing().setActivationDelay(ACTIVATION_DELAY);
+    }
+
+    @Test
+    void sharesKeysThroughFile() throws IOException {
+        KeyRingService first = new KeyRingService(appProperties, cryptoService, objectMapper);
+        KeyRingService second = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertTrue(Files.exists(path));
+        assertEquals(1, first.getKeys().size());
+        assertEquals(kids(first), kids(second));
+        assertEquals(first.getSigningKey().getSigningKey(), second.getSigningKey().getSigningKey());
+    }
+
+    /**
+     * The new key is not used for signing until other instances had time to load it.
+     */
+    @Test
+    void addsKeyAfterRotationPeriod() throws IOException {
+        KeyRingService.StoredKey oldKey = storedKey(ROTATION_PERIOD.plusDays(1));
+        writeKeyRing(oldKey);
+
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertEquals(2, keyRingService.getKeys().size());
+        assertEquals(oldKey.getKid(), keyRingService.getSigningKey().getKid());
+        assertEquals(kids(keyRingService), readKids());
+    }
+
+    @Test
+    void signsWithNewestActiveKey() throws IOException {
+        KeyRingService.StoredKey activeKey = storedKey(ACTIVATION_DELAY.plusMinutes(1));
+        writeKeyRing(storedKey(ROTATION_PERIOD.plusDays(1)), activeKey, storedKey(Duration.ZERO));
+
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertEquals(activeKey.getKid(), keyRingService.getSigningKey().getKid());
+        assertTrue(keyRingService.findKey(activeKey.getKid()).isPresent());
+    }
+
+    @Test
+    void keepsPreviousKeyWhileItsTokensMayBeValid() throws IOException {
+        KeyRingService.StoredKey previousKey = storedKey(ROTATION_PERIOD.multipliedBy(2));
+        KeyRingService.StoredKey currentKey = storedKey(ACTIVATION_DELAY.plus(VERIFICATION_TOKEN_EXPIRATION).minusMinutes(1));
+        writeKeyRing(previousKey, currentKey);
+
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertEquals(List.of(previousKey.getKid(), currentKey.getKid()), kids(keyRingService));
+    }
+
+    @Test
+    void dropsKeyOnceItsTokensExpired() throws IOException {
+        KeyRingService.StoredKey expiredKey = storedKey(ROTATION_PERIOD.multipliedBy(2));
+        KeyRingService.StoredKey currentKey = storedKey(ACTIVATION_DELAY.plus(VERIFICATION_TOKEN_EXPIRATION).plusMinutes(1));
+        writeKeyRing(expiredKey, currentKey);
+
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertEquals(List.of(currentKey.getKid()), kids(keyRingService));
+        assertTrue(keyRingService.findKey(expiredKey.getKid()).isEmpty());
+        assertEquals(List.of(currentKey.getKid()), readKids());
+    }
+
+    /**
+     * Refresh tokens issued as JWTs are signed too, so their lifetime also keeps old keys.
+     */
+    @Test
+    void keepsKeyOfJwtRefreshTokens() throws IOException {
+        appProperties.getAuth().setOpaqueRefreshTokens(false);
+        KeyRingService.StoredKey previousKey = storedKey(ROTATION_PERIOD.multipliedBy(2));
+        KeyRingService.StoredKey currentKey = storedKey(ACTIVATION_DELAY.plus(VERIFICATION_TOKEN_EXPIRATION).plusMinutes(1));
+        writeKeyRing(previousKey, currentKey);
+
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+
+        assertEquals(List.of(previousKey.getKid(), currentKey.getKid()), kids(keyRingService));
+    }
+
+    /**
+     * An instance refreshing after another one rotated the key takes over that key instead of adding its own.
+     */
+    @Test
+    void loadsKeyAddedByOtherInstance() throws IOException {
+        KeyRingService.StoredKey currentKey = storedKey(ROTATION_PERIOD.minusDays(1));
+        writeKeyRing(currentKey);
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+        KeyRingService.StoredKey addedKey = storedKey(Duration.ZERO);
+        writeKeyRing(currentKey, addedKey);
+
+        keyRingService.refresh();
+
+        assertEquals(List.of(currentKey.getKid(), addedKey.getKid()), kids(keyRingService));
+        assertEquals(kids(keyRingService), readKids());
+    }
+
+    @Test
+    void releasesFileLock() throws IOException {
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+        keyRingService.refresh();
+
+        Path lockPath = path.resolveSibling("keyring.json.lock");
+        try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            assertNotNull(lock);
+        }
+    }
+
+    @Test
+    void keepsKeysInMemoryWithoutPath() throws IOException {
+        appProperties.getAuth().getKeyRing().setPath("");
+
+        KeyRingService first = new KeyRingService(appProperties, cryptoService, objectMapper);
+        KeyRingService second = new KeyRingService(appProperties, cryptoService, objectMapper);
+        first.refresh();
+
+        assertEquals(1, first.getKeys().size());
+        assertNotEquals(kids(first), kids(second));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private KeyRingService.StoredKey storedKey(Duration age) {
+        KeyRingService.StoredKey storedKey = new KeyRingService.StoredKey();
+        storedKey.setKid(Base64.getUrlEncoder().withoutPadding().encodeToString(cryptoService.generateSecret(9)));
+        storedKey.setCreatedAt(Instant.now().minus(age));
+        storedKey.setSecret(Base64.getEncoder().encodeToString(cryptoService.generateSecret(64)));
+        return storedKey;
+    }
+
+    private void writeKeyRing(KeyRingService.StoredKey... storedKeys) throws IOException {
+        KeyRingService.StoredKeyRing storedKeyRing = new KeyRingService.StoredKeyRing();
+        storedKeyRing.setKeys(List.of(storedKeys));
+        Files.createDirectories(path.getParent());
+        objectMapper.writeValue(path.toFile(), storedKeyRing);
+    }
+
+    private List<String> readKids() throws IOException {
+        return objectMapper.readValue(path.toFile(), KeyRingService.StoredKeyRing.class).getKeys().stream()
+                .map(KeyRingService.StoredKey::getKid)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> kids(KeyRingService keyRingService) {
+        return keyRingService.getKeys().stream().map(TokenKey::getKid).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitServiceTest {
+
+    private static final String ADDRESS = "192.0.2.1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AppProperties appProperties;
+    private AppProperties.RateLimit rateLimit;
+
+    @BeforeEach
+    void setUp() {
+        appProperties = new AppProperties();
+        rateLimit = appProperties.getAuth().getRateLimit();
+    }
+
+    @Test
+    void rejectsRequestsBeyondLimit() {
+        setLimit(rateLimit.getPerIp(), 3, Duration.ofMinutes(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+        for (int i = 0; i < 3; i++) {
+            rateLimitService.acquire(ADDRESS);
+        }
+
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquire(ADDRESS));
+
+        assertTrue(exception.getRetryAfter().compareTo(Duration.ZERO) > 0);
+        assertTrue(exception.getRetryAfter().compareTo(Duration.ofSeconds(20)) <= 0);
+        assertDoesNotThrow(() -> rateLimitService.acquire("192.0.2.2"));
+        assertEquals(1, meterRegistry.get("auth.rate.limited").tag("key", "ip").counter().count());
+    }
+
+    /**
+     * A rejected client may retry after the returned delay, by then the bucket has refilled one request but no more.
+     */
+    @Test
+    void refillsOneRequestPerInterval() throws InterruptedException {
+        setLimit(rateLimit.getPerIp(), 2, Duration.ofSeconds(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+        rateLimitService.acquire(ADDRESS);
+        rateLimitService.acquire(ADDRESS);
+        Duration retryAfter = assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquire(ADDRESS)).getRetryAfter();
+
+        Thread.sleep(retryAfter.toMillis() + 50);
+
+        assertDoesNotThrow(() -> rateLimitService.acquire(ADDRESS));
+        assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquire(ADDRESS));
+    }
+
+    @Test
+    void limitsIpv6ClientsPerNetwork() {
+        setLimit(rateLimit.getPerIp(), 1, Duration.ofMinutes(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+        rateLimitService.acquire("2001:db8::1");
+
+        assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquire("2001:db8:0:0:ffff::2"));
+        assertDoesNotThrow(() -> rateLimitService.acquire("2001:db8:0:1::1"));
+    }
+
+    @Test
+    void limitsEmailAcrossAddresses() {
+        setLimit(rateLimit.getPerEmail(), 1, Duration.ofMinutes(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+        rateLimitService.acquire(ADDRESS, "User@example.com");
+
+        assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquire("192.0.2.2", " user@EXAMPLE.com"));
+        assertDoesNotThrow(() -> rateLimitService.acquire("192.0.2.3", "other@example.com"));
+    }
+
+    @Test
+    void limitsTwoFactorCodesPerUser() {
+        setLimit(rateLimit.getPerTwoFactorUser(), 1, Duration.ofMinutes(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+        rateLimitService.acquireTwoFactor(1L);
+
+        assertThrows(TooManyRequestsException.class, () -> rateLimitService.acquireTwoFactor(1L));
+        assertDoesNotThrow(() -> rateLimitService.acquireTwoFactor(2L));
+    }
+
+    @Test
+    void neverLimitsWithoutRequests() {
+        setLimit(rateLimit.getPerIntrospectionClient(), 0, Duration.ofMinutes(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimitService.acquireIntrospection("client");
+        }
+    }
+
+    /**
+     * Buckets beyond the maximum are dropped. The cache enforces its size in maintenance runs triggered by later
+     * requests, so the test keeps sending requests of new clients until one has run.
+     */
+    @Test
+    void boundsNumberOfBuckets() throws InterruptedException {
+        rateLimit.setMaximumKeys(10);
+        setLimit(rateLimit.getPerIp(), 1, Duration.ofHours(1));
+        RateLimitService rateLimitService = new RateLimitService(appProperties, meterRegistry);
+
+        for (int i = 0; i < 1000; i++) {
+            rateLimitService.acquire("10.0." + (i / 256) + "." + (i % 256));
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        for (int i = 0; bucketCount() > 10 && System.nanoTime() < deadline; i++) {
+            rateLimitService.acquire("10.1." + (i / 256) + "." + (i % 256));
+            Thread.sleep(10);
+        }
+
+        assertTrue(bucketCount() <= 10);
+        assertTrue(meterRegistry.get("cache.evictions").tag("cache", "rateLimit.ip").functionCounter().count() >= 990);
+    }
+
+    private double bucketCount() {
+        return meterRegistry.get("cache.size").tag("cache", "rateLimit.ip").gauge().value();
+    }
+
+    private static void setLimit(AppProperties.Limit limit, int requests, Duration period) {
+        limit.setRequests(requests);
+        limit.setPeriod(period);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.fullstacktemplate.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ciphers of {@code app.auth.subjectEncryptionAlgorithm} on a token subject, encrypted once when the token
+ * is issued and decrypted on every uncached verification. Run {@link #main(String[])}, which also reports the
+ * allocations per operation, or after {@code mvn test-compile} run
+ * {@code org.openjdk.jmh.Main SubjectEncryptionBenchmark -prof gc} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubjectEncryptionBenchmark {
+
+    private static final String SUBJECT = "1234567";
+
+    private CryptoService cryptoService;
+    private SecretKey key;
+    private IvParameterSpec initializationVector;
+    private String cbcSubject;
+    private String gcmSubject;
+
+    @Setup
+    public void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        key = cryptoService.generateKey(256);
+        initializationVector = cryptoService.generateInitializationVector();
+        cbcSubject = cryptoService.encrypt(CryptoService.AES_CBC, SUBJECT, key, initializationVector);
+        gcmSubject = cryptoService.encrypt(SUBJECT, key);
+    }
+
+    @Benchmark
+    public String encryptCbc() throws Exception {
+        return cryptoService.encrypt(CryptoService.AES_CBC, SUBJECT, key, initializationVector);
+    }
+
+    @Benchmark
+    public String encryptGcm() throws Exception {
+        return cryptoService.encrypt(SUBJECT, key);
+    }
+
+    @Benchmark
+    public String decryptCbc() throws Exception {
+        return cryptoService.decrypt(CryptoService.AES_CBC, cbcSubject, key, initializationVector);
+    }
+
+    @Benchmark
+    public String decryptGcm() throws Exception {
+        return cryptoService.decrypt(gcmSubject, key);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SubjectEncryptionBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
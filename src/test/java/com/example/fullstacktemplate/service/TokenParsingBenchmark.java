@@ -0,0 +1,78 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.ParsedToken;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing an access token once, as the authentication filter does, with the former validation followed by a
+ * second parse to read the user id. Neither goes through the access token cache. Run {@link #main(String[])}, or after
+ * {@code mvn test-compile} run {@code org.openjdk.jmh.Main TokenParsingBenchmark} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenParsingBenchmark {
+
+    private TokenService tokenService;
+    private String token;
+
+    @Setup
+    public void setUp() throws IOException {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getAuth().getKeyRing().setPath("");
+        CryptoService cryptoService = new CryptoService();
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        KeyRingService keyRingService = new KeyRingService(appProperties, cryptoService, objectMapper);
+        tokenService = new TokenService(appProperties, null, cryptoService, keyRingService, null, null, objectMapper, new SimpleMeterRegistry());
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("user@example.com");
+        user.setName("user");
+        user.setRole(Role.USER);
+        user.setTokenVersion(0);
+        token = tokenService.createAccessTokenValue(user, Duration.ofDays(1));
+    }
+
+    @Benchmark
+    public Optional<ParsedToken> singlePass() {
+        return tokenService.parseJwtToken(token, TokenType.ACCESS);
+    }
+
+    @Benchmark
+    public Optional<ParsedToken> twoPass() {
+        if (tokenService.parseJwtToken(token).isEmpty()) {
+            return Optional.empty();
+        }
+        return tokenService.parseJwtToken(token, TokenType.ACCESS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.JwtToken;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.TokenRepository;
+import com.example.fullstacktemplate.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Revocations are stored directly, as if by another instance, and reach the set only by a refresh.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class TokenRevocationServiceTest {
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    private TokenRepository tokenRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void loadsRevocationsStoredSinceLastRefreshUntilTheyExpire() {
+        TokenRevocationService tokenRevocationService = new TokenRevocationService(tokenRepository, new SimpleMeterRegistry());
+        tokenRevocationService.refresh();
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(5));
+        String digest = storeRevocation(expiresAt);
+
+        assertFalse(tokenRevocationService.isRevoked(digest));
+        tokenRevocationService.refresh();
+        assertTrue(tokenRevocationService.isRevoked(digest));
+
+        tokenRevocationService.refresh(expiresAt.plus(Duration.ofMinutes(2)));
+        assertFalse(tokenRevocationService.isRevoked(digest));
+    }
+
+    @Test
+    void loadsAllUnexpiredRevocationsOnFirstRefresh() {
+        String digest = storeRevocation(Instant.now().plus(Duration.ofMinutes(5)));
+        String expiredDigest = storeRevocation(Instant.now().minus(Duration.ofMinutes(5)));
+        TokenRevocationService tokenRevocationService = new TokenRevocationService(tokenRepository, new SimpleMeterRegistry());
+
+        tokenRevocationService.refresh();
+
+        assertTrue(tokenRevocationService.isRevoked(digest));
+        assertFalse(tokenRevocationService.isRevoked(expiredDigest));
+    }
+
+    private String storeRevocation(Instant expiresAt) {
+        byte[] digest = new byte[32];
+        random.nextBytes(digest);
+        JwtToken revokedToken = new JwtToken();
+        revokedToken.setDigest(Base64.getUrlEncoder().withoutPadding().encodeToString(digest));
+        revokedToken.setUser(createUser());
+        revokedToken.setTokenType(TokenType.REVOKED_ACCESS);
+        revokedToken.setExpiresAt(expiresAt);
+        return tokenRepository.save(revokedToken).getDigest();
+    }
+
+    private User createUser() {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(false);
+        return userRepository.save(user);
+    }
+}
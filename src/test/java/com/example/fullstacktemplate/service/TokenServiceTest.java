@@ -0,0 +1,163 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.AuthProvider;
+import com.example.fullstacktemplate.model.JwtToken;
+import com.example.fullstacktemplate.model.Role;
+import com.example.fullstacktemplate.model.TokenType;
+import com.example.fullstacktemplate.model.User;
+import com.example.fullstacktemplate.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stored tokens are looked up by the digest of their value, the value itself never reaches the database.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class TokenServiceTest {
+
+    private static final Duration EXPIRATION = Duration.ofMinutes(5);
+
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private CryptoService cryptoService;
+    @Autowired
+    private KeyRingService keyRingService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        user = createUser();
+    }
+
+    @Test
+    void hashesToUnpaddedBase64UrlSha256() {
+        assertEquals("ungWv48Bz-pBQUDeXa4iI7ADYaOWF3qctBD_YfIAFa0", cryptoService.hash("abc"));
+    }
+
+    @Test
+    void storesDigestOfValue() {
+        JwtToken jwtToken = tokenService.createOpaqueToken(user, EXPIRATION, TokenType.REFRESH);
+
+        String digest = jdbcTemplate.queryForObject("SELECT digest FROM jwt_token WHERE id = ?", String.class, jwtToken.getId());
+
+        assertEquals(cryptoService.hash(jwtToken.getValue()), digest);
+    }
+
+    /**
+     * Opaque tokens are random values, which are only valid while their digest is stored.
+     */
+    @Test
+    void findsOpaqueTokenByValueOnly() {
+        JwtToken jwtToken = tokenService.createOpaqueToken(user, EXPIRATION, TokenType.REFRESH);
+
+        assertEquals(43, jwtToken.getValue().length());
+        assertTrue(tokenService.parseJwtToken(jwtToken.getValue()).isEmpty());
+        assertEquals(jwtToken.getId(), tokenService.findValidToken(jwtToken.getValue(), TokenType.REFRESH).orElseThrow().getId());
+
+        tokenService.delete(jwtToken);
+
+        assertTrue(tokenService.findValidToken(jwtToken.getValue(), TokenType.REFRESH).isEmpty());
+    }
+
+    @Test
+    void findsTokenByValue() {
+        JwtToken jwtToken = tokenService.createToken(user, EXPIRATION, TokenType.ACCOUNT_ACTIVATION);
+
+        assertEquals(jwtToken.getId(), tokenService.findValidToken(jwtToken.getValue(), TokenType.ACCOUNT_ACTIVATION).orElseThrow().getId());
+        assertTrue(tokenService.findToken(jwtToken.getValue(), TokenType.FORGOTTEN_PASSWORD).isEmpty());
+    }
+
+    @Test
+    void findsExpiredTokenOnlyAsStored() {
+        JwtToken jwtToken = tokenService.createOpaqueToken(user, EXPIRATION.negated(), TokenType.REFRESH);
+
+        assertTrue(tokenService.findToken(jwtToken.getValue(), TokenType.REFRESH).isPresent());
+        assertTrue(tokenService.findValidToken(jwtToken.getValue(), TokenType.REFRESH).isEmpty());
+    }
+
+    @Test
+    void remembersMissingDigests() {
+        String value = cryptoService.generateOpaqueToken();
+        assertTrue(tokenService.findToken(value, TokenType.REFRESH).isEmpty());
+
+        statistics.clear();
+        assertTrue(tokenService.findToken(value, TokenType.REFRESH).isEmpty());
+        assertTrue(tokenService.findValidTokens(List.of(value), TokenType.REFRESH).isEmpty());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findsManyTokensWithOneQuery() {
+        JwtToken first = tokenService.createOpaqueToken(user, EXPIRATION, TokenType.REFRESH);
+        JwtToken second = tokenService.createOpaqueToken(user, EXPIRATION, TokenType.REFRESH);
+        String missing = cryptoService.generateOpaqueToken();
+
+        statistics.clear();
+        Map<String, JwtToken> jwtTokens = tokenService.findValidTokens(List.of(first.getValue(), second.getValue(), missing), TokenType.REFRESH);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(Set.of(first.getValue(), second.getValue()), jwtTokens.keySet());
+        assertEquals(first.getId(), jwtTokens.get(first.getValue()).getId());
+        assertEquals(second.getId(), jwtTokens.get(second.getValue()).getId());
+    }
+
+    /**
+     * Tokens name the cipher of their subject, so they stay valid when the configured cipher changes.
+     */
+    @Test
+    void readsTokensOfOtherCipher() {
+        AppProperties gcmProperties = new AppProperties();
+        gcmProperties.getAuth().setSubjectEncryptionAlgorithm(CryptoService.AES_GCM);
+        TokenService gcmTokenService = new TokenService(gcmProperties, null, cryptoService, keyRingService, null, null, objectMapper, new SimpleMeterRegistry());
+        String cbcToken = tokenService.createAccessTokenValue(user, EXPIRATION);
+        String gcmToken = gcmTokenService.createAccessTokenValue(user, EXPIRATION);
+
+        assertEquals(user.getId(), gcmTokenService.parseJwtToken(cbcToken, TokenType.ACCESS).orElseThrow().getUserId());
+        assertEquals(user.getId(), tokenService.parseJwtToken(gcmToken, TokenType.ACCESS).orElseThrow().getUserId());
+    }
+
+    private User createUser() {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setAuthProvider(AuthProvider.local);
+        user.setRole(Role.USER);
+        user.setEmailVerified(true);
+        user.setTwoFactorEnabled(false);
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.fullstacktemplate.service;
+
+import com.example.fullstacktemplate.model.TokenKey;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verification of an access token by {@link CompactJwtVerifier} with jjwt. Run {@link #main(String[])}, or
+ * after {@code mvn test-compile} run {@code org.openjdk.jmh.Main TokenVerificationBenchmark} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenVerificationBenchmark {
+
+    private TokenKey tokenKey;
+    private CompactJwtVerifier compactJwtVerifier;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        byte[] secret = new byte[64];
+        byte[] subject = new byte[16];
+        Random random = new Random(0);
+        random.nextBytes(secret);
+        random.nextBytes(subject);
+        tokenKey = new TokenKey("kid", Instant.now(), new SecretKeySpec(secret, CryptoService.HMAC_SHA512), null, null, null);
+        compactJwtVerifier = new CompactJwtVerifier(kid -> Optional.of(tokenKey));
+        token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, tokenKey.getKid())
+                .setId(UUID.randomUUID().toString())
+                .setSubject(Base64.getEncoder().encodeToString(subject))
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                .setIssuer("Full-stack template")
+                .claim(TokenService.TOKEN_TYPE_CLAIM, "ACCESS")
+                .claim(TokenService.TOKEN_VERSION_CLAIM, 0)
+                .signWith(SignatureAlgorithm.HS512, tokenKey.getSigningKey())
+                .compact();
+    }
+
+    @Benchmark
+    public CompactJwtVerifier.VerifiedClaims compactJwtVerifier() {
+        return compactJwtVerifier.verify(token);
+    }
+
+    @Benchmark
+    public CompactJwtVerifier.VerifiedClaims jjwt() {
+        Claims claims = Jwts.parser()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return tokenKey.getSigningKey();
+                    }
+                })
+                .parseClaimsJws(token)
+                .getBody();
+        return CompactJwtVerifier.VerifiedClaims.of(tokenKey, claims, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenVerificationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
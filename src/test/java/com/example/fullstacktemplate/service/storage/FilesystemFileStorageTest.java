@@ -0,0 +1,126 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.config.AppProperties;
+import com.example.fullstacktemplate.model.FileDb;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilesystemFileStorageTest {
+
+    private static final Duration GRACE_PERIOD = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private FilesystemFileStorage fileStorage;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getFileStorage().setDirectory(directory.toString());
+        fileStorage = new FilesystemFileStorage(appProperties);
+    }
+
+    @Test
+    void deletesUnreferencedContent() throws IOException {
+        FileDb fileDb = store("unreferenced");
+        makeOld(fileDb);
+
+        assertEquals(1, fileStorage.deleteUnreferencedContent(contentHashes -> List.of(), GRACE_PERIOD));
+
+        assertFalse(Files.exists(path(fileDb)));
+    }
+
+    @Test
+    void keepsReferencedContent() throws IOException {
+        FileDb fileDb = store("referenced");
+        makeOld(fileDb);
+
+        assertEquals(0, fileStorage.deleteUnreferencedContent(contentHashes -> Set.of(fileDb.getContentHash()), GRACE_PERIOD));
+
+        assertTrue(Files.exists(path(fileDb)));
+    }
+
+    @Test
+    void keepsContentStoredWithinGracePeriod() throws IOException {
+        FileDb fileDb = store("recent");
+
+        assertEquals(0, fileStorage.deleteUnreferencedContent(contentHashes -> List.of(), GRACE_PERIOD));
+
+        assertTrue(Files.exists(path(fileDb)));
+    }
+
+    /**
+     * A save reusing content of a released file touches the content, so it survives until the save has committed.
+     */
+    @Test
+    void keepsContentReusedWithinGracePeriod() throws IOException {
+        FileDb fileDb = store("reused");
+        makeOld(fileDb);
+        store("reused");
+
+        assertEquals(0, fileStorage.deleteUnreferencedContent(contentHashes -> List.of(), GRACE_PERIOD));
+
+        assertTrue(Files.exists(path(fileDb)));
+    }
+
+    /**
+     * A save reusing content while it is being deleted finds it missing and writes it again.
+     */
+    @Test
+    void storesDeletedContentAgain() throws IOException {
+        FileDb fileDb = store("stored again");
+        makeOld(fileDb);
+        fileStorage.deleteUnreferencedContent(contentHashes -> List.of(), GRACE_PERIOD);
+
+        store("stored again");
+
+        assertArrayEquals("stored again".getBytes(StandardCharsets.UTF_8), fileStorage.read(new StoredFile(fileDb)));
+    }
+
+    @Test
+    void deletesLeftoverTemporaryFiles() throws IOException {
+        FileDb fileDb = store("temporary");
+        Path temporaryFile = Files.createFile(path(fileDb).resolveSibling(fileDb.getContentHash() + ".tmp"));
+        Files.setLastModifiedTime(temporaryFile, FileTime.from(Instant.now().minus(GRACE_PERIOD.multipliedBy(2))));
+
+        fileStorage.deleteUnreferencedContent(contentHashes -> List.of(fileDb.getContentHash()), GRACE_PERIOD);
+
+        assertFalse(Files.exists(temporaryFile));
+        assertTrue(Files.exists(path(fileDb)));
+    }
+
+    private FileDb store(String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        FileDb fileDb = new FileDb();
+        fileDb.setContentHash(DigestUtils.sha256Hex(data));
+        fileDb.setSize((long) data.length);
+        fileStorage.store(fileDb, data);
+        return fileDb;
+    }
+
+    private void makeOld(FileDb fileDb) throws IOException {
+        Files.setLastModifiedTime(path(fileDb), FileTime.from(Instant.now().minus(GRACE_PERIOD.multipliedBy(2))));
+    }
+
+    private Path path(FileDb fileDb) {
+        return directory.resolve(fileDb.getContentHash().substring(0, 2)).resolve(fileDb.getContentHash());
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.fullstacktemplate.service.storage;
+
+import com.example.fullstacktemplate.model.FileDb;
+import com.example.fullstacktemplate.model.FileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class StoredFileTest {
+
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Cached snapshots are shared between requests, so neither the entity nor a reader may change their content.
+     */
+    @Test
+    void keepsContentOfSnapshot() throws IOException {
+        FileDb fileDb = new FileDb("file.png", FileType.IMAGE_PNG, CONTENT.clone());
+        StoredFile storedFile = new StoredFile(fileDb);
+
+        fileDb.getData()[0] = 'x';
+        storedFile.copyData()[0] = 'x';
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        storedFile.writeData(outputStream);
+        assertArrayEquals(CONTENT, outputStream.toByteArray());
+        assertArrayEquals(CONTENT, storedFile.copyData());
+    }
+}